@@ -0,0 +1,56 @@
+package com.networknt.rule.generic.token;
+
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Local token service for the refresh path, so benchmarks measure the plugin and not a remote identity provider.
+ * Every request gets a new access token.
+ */
+public class StubTokenServer {
+
+    public static final int PORT = 17181;
+
+    private final AtomicLong issued = new AtomicLong();
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newFixedThreadPool(8);
+
+    public StubTokenServer() throws IOException {
+        this.server = HttpServer.create(new InetSocketAddress("localhost", PORT), 256);
+        this.server.createContext("/services/oauth2/token", exchange -> {
+            exchange.getRequestBody().readAllBytes();
+            final var body = ("{\"access_token\":\"token-" + this.issued.incrementAndGet() + "\",\"token_type\":\"Bearer\",\"expires_in\":3600}")
+                    .getBytes(StandardCharsets.UTF_8);
+
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+
+            try (final var out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        this.server.setExecutor(this.executor);
+    }
+
+    public void start() {
+        this.server.start();
+    }
+
+    public void stop() {
+        this.server.stop(0);
+        this.executor.shutdownNow();
+    }
+
+    /**
+     * @return - number of tokens issued so far.
+     */
+    public long getIssued() {
+        return this.issued.get();
+    }
+}
@@ -0,0 +1,91 @@
+package com.networknt.rule.generic.token;
+
+import com.networknt.rule.generic.token.schema.TokenSchema;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the token action, from the cached-token path that runs on every proxied request
+ * to a full refresh against the local stub token service.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class TokenActionBenchmark {
+
+    private static final String CACHED_SCHEMA = "cachedBenchmark";
+    private static final String REFRESH_SCHEMA = "refreshBenchmark";
+    private static final String JWT_SCHEMA = "jwtBenchmark";
+
+    private StubTokenServer server;
+    private TokenTransformerAction action;
+    private TokenSchema cachedSchema;
+    private TokenSchema refreshSchema;
+    private TokenSchema jwtSchema;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        this.server = new StubTokenServer();
+        this.server.start();
+        this.action = new TokenTransformerAction();
+        this.cachedSchema = this.action.getTokenSchema(CACHED_SCHEMA);
+        this.refreshSchema = this.action.getTokenSchema(REFRESH_SCHEMA);
+        this.jwtSchema = this.action.getTokenSchema(JWT_SCHEMA);
+
+        /* the cached path should never see an expired token while measuring. */
+        this.action.handleTokenAction(CACHED_SCHEMA, new HashMap<>());
+        this.action.handleTokenAction(REFRESH_SCHEMA, new HashMap<>());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        this.server.stop();
+    }
+
+    @Benchmark
+    public Map<String, Object> cachedHandleTokenAction() throws InterruptedException {
+        final var resultMap = new HashMap<String, Object>();
+        this.action.handleTokenAction(CACHED_SCHEMA, resultMap);
+        return resultMap;
+    }
+
+    @Benchmark
+    public Map<String, Object> updateResultMapFromSchema() {
+        final var resultMap = new HashMap<String, Object>();
+        this.action.updateResultMapFromSchema(this.cachedSchema.getTokenUpdate(), this.cachedSchema.getSharedVariables(), resultMap);
+        return resultMap;
+    }
+
+    /**
+     * Expires the token before every call, so each call goes through the refresh. Concurrent callers share in-flight refreshes.
+     */
+    @Benchmark
+    public Map<String, Object> refreshHandleTokenAction() throws InterruptedException {
+        this.refreshSchema.getSharedVariables().setExpiration(0);
+        final var resultMap = new HashMap<String, Object>();
+        this.action.handleTokenAction(REFRESH_SCHEMA, resultMap);
+        return resultMap;
+    }
+
+    @Benchmark
+    public String buildJwtToken() {
+        return this.action.buildJwtToken(this.jwtSchema.getTokenRequest());
+    }
+}
@@ -0,0 +1,28 @@
+package com.networknt.rule.generic.token;
+
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Entry point of the benchmarks jar. Takes the regular JMH command line options, and when no thread count is given
+ * runs the selected benchmarks at 1, 8 and 64 threads so contention shows up next to the single threaded numbers.
+ */
+public class TokenTransformerBenchmarks {
+
+    private static final int[] THREAD_COUNTS = {1, 8, 64};
+
+    public static void main(final String[] args) throws CommandLineOptionException, RunnerException {
+        final var commandLine = new CommandLineOptions(args);
+
+        if (commandLine.getThreads().hasValue()) {
+            new Runner(commandLine).run();
+            return;
+        }
+
+        for (final var threads : THREAD_COUNTS)
+            new Runner(new OptionsBuilder().parent(commandLine).threads(threads).build()).run();
+    }
+}
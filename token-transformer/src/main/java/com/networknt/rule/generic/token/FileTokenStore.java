@@ -0,0 +1,177 @@
+package com.networknt.rule.generic.token;
+
+import com.networknt.rule.generic.token.schema.TokenState;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Token store kept in a directory shared by the instances, i.e. a mounted volume.
+ * Tokens are written to encrypted files in the same format as the persistent cache. Leases are files created exclusively
+ * next to the token file, holding the owner and the time the lease runs out.
+ * Breaking an expired lease is best effort: in the worst case two instances request a token for the same expiry window.
+ */
+public class FileTokenStore implements TokenStore {
+
+    private static final Logger LOG = LoggerFactory.getLogger(FileTokenStore.class);
+    private static final String LEASE_EXTENSION = ".lease";
+
+    private final PersistentTokenCache files;
+
+    /**
+     * @param directory - shared directory the token and lease files are kept in. Created if it does not exist.
+     * @param secret - secret the token files are encrypted with. Must be the same on every instance.
+     */
+    public FileTokenStore(final Path directory, final char[] secret) {
+        this.files = new PersistentTokenCache(directory, secret);
+    }
+
+    @Override
+    public TokenState get(final String tokenSchema) {
+        return this.files.read(tokenSchema);
+    }
+
+    @Override
+    public void put(final String tokenSchema, final TokenState tokenState) {
+        final var existing = this.files.read(tokenSchema);
+
+        /* never replace a token with one that expires sooner. */
+        if (existing != null && existing.getExpiration() > tokenState.getExpiration())
+            return;
+
+        try {
+            this.files.write(tokenSchema, tokenState);
+
+        } catch (IOException e) {
+            LOG.error("Could not write the shared token for schema '{}': {}", tokenSchema, e.getMessage());
+        }
+    }
+
+    @Override
+    public boolean tryAcquireLease(final String tokenSchema, final String owner, final long leaseMillis) {
+        final var leaseFile = this.leaseFileFor(tokenSchema);
+        final var lease = owner + "\n" + (System.currentTimeMillis() + leaseMillis);
+
+        try {
+            Files.createDirectories(leaseFile.getParent());
+
+            try {
+                Files.writeString(leaseFile, lease, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+                return true;
+
+            } catch (FileAlreadyExistsException e) {
+                final var existing = readLease(leaseFile);
+
+                if (existing == null)
+                    return false;
+
+                if (existing.owner.equals(owner)) {
+                    Files.writeString(leaseFile, lease);
+                    return true;
+                }
+
+                if (existing.expiresAt > System.currentTimeMillis() || !this.breakLease(leaseFile, existing, owner))
+                    return false;
+
+                Files.writeString(leaseFile, lease, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+                return true;
+            }
+
+        } catch (FileAlreadyExistsException e) {
+            LOG.trace("Lease for schema '{}' was taken by another instance.", tokenSchema);
+            return false;
+
+        } catch (IOException e) {
+            LOG.error("Could not take the lease for schema '{}': {}", tokenSchema, e.getMessage());
+            return false;
+        }
+    }
+
+    @Override
+    public void releaseLease(final String tokenSchema, final String owner) {
+        final var leaseFile = this.leaseFileFor(tokenSchema);
+        final var existing = readLease(leaseFile);
+
+        if (existing == null || !existing.owner.equals(owner))
+            return;
+
+        try {
+            Files.deleteIfExists(leaseFile);
+
+        } catch (IOException e) {
+            LOG.error("Could not release the lease for schema '{}': {}", tokenSchema, e.getMessage());
+        }
+    }
+
+    /**
+     * Moves an expired lease out of the way. The move only succeeds for one instance, and the moved file is checked to still be
+     * the expired lease, in case another instance replaced it in between.
+     */
+    private boolean breakLease(final Path leaseFile, final Lease expired, final String owner) throws IOException {
+        final var broken = leaseFile.resolveSibling(leaseFile.getFileName() + "." + owner + ".expired");
+
+        try {
+            Files.move(leaseFile, broken, StandardCopyOption.ATOMIC_MOVE);
+
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+
+        final var moved = readLease(broken);
+
+        if (moved != null && moved.owner.equals(expired.owner) && moved.expiresAt == expired.expiresAt) {
+            Files.deleteIfExists(broken);
+            return true;
+        }
+
+        /* moved a live lease, put it back unless a new one was already created. */
+        try {
+            Files.copy(broken, leaseFile);
+
+        } catch (FileAlreadyExistsException e) {
+            LOG.trace("Lease {} was taken again before it could be restored.", leaseFile);
+
+        } finally {
+            Files.deleteIfExists(broken);
+        }
+        return false;
+    }
+
+    private Path leaseFileFor(final String tokenSchema) {
+        final var tokenFile = this.files.fileFor(tokenSchema);
+        return tokenFile.resolveSibling(tokenFile.getFileName() + LEASE_EXTENSION);
+    }
+
+    private static Lease readLease(final Path leaseFile) {
+        try {
+            final var content = Files.readString(leaseFile, StandardCharsets.UTF_8).split("\n");
+            return new Lease(content[0], Long.parseLong(content[1].trim()));
+
+        } catch (NoSuchFileException e) {
+            return null;
+
+        } catch (IOException | RuntimeException e) {
+
+            /* a lease being written, or a corrupt one. Treated as expired so it cannot block refreshes forever. */
+            return new Lease("", 0L);
+        }
+    }
+
+    private static final class Lease {
+        private final String owner;
+        private final long expiresAt;
+
+        private Lease(final String owner, final long expiresAt) {
+            this.owner = owner;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
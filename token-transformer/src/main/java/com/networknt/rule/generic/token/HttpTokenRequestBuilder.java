@@ -10,6 +10,7 @@ import java.net.URISyntaxException;
 import java.net.URLEncoder;
 import java.net.http.HttpRequest;
 import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.stream.Collectors;
@@ -89,6 +90,16 @@ public class HttpTokenRequestBuilder {
         return this;
     }
 
+    public HttpTokenRequestBuilder withTimeout(final long timeout) {
+
+        /* 0 means no timeout, the request then waits on the token service for as long as it takes. */
+        if (timeout > 0) {
+            LOG.trace("Setting token request timeout to {}ms.", timeout);
+            this.httpRequestBuilder.timeout(Duration.ofMillis(timeout));
+        }
+        return this;
+    }
+
     public HttpRequest build() {
         return this.httpRequestBuilder.build();
     }
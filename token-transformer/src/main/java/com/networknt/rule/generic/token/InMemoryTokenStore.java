@@ -0,0 +1,58 @@
+package com.networknt.rule.generic.token;
+
+import com.networknt.rule.generic.token.schema.TokenState;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Default token store, only shared within this process.
+ */
+public class InMemoryTokenStore implements TokenStore {
+
+    private final Map<String, TokenState> tokens = new ConcurrentHashMap<>();
+    private final Map<String, Lease> leases = new ConcurrentHashMap<>();
+
+    @Override
+    public TokenState get(final String tokenSchema) {
+        return this.tokens.get(tokenSchema);
+    }
+
+    @Override
+    public void put(final String tokenSchema, final TokenState tokenState) {
+
+        /* never replace a token with one that expires sooner. */
+        this.tokens.merge(tokenSchema, tokenState, (existing, update) -> update.getExpiration() >= existing.getExpiration() ? update : existing);
+    }
+
+    @Override
+    public boolean tryAcquireLease(final String tokenSchema, final String owner, final long leaseMillis) {
+        final var now = System.currentTimeMillis();
+        final var lease = this.leases.compute(tokenSchema, (name, existing) ->
+                existing == null || existing.expiresAt <= now || existing.owner.equals(owner)
+                        ? new Lease(owner, now + leaseMillis)
+                        : existing);
+
+        return lease.owner.equals(owner);
+    }
+
+    @Override
+    public void releaseLease(final String tokenSchema, final String owner) {
+        this.leases.computeIfPresent(tokenSchema, (name, existing) -> existing.owner.equals(owner) ? null : existing);
+    }
+
+    @Override
+    public void remove(final String tokenSchema) {
+        this.tokens.remove(tokenSchema);
+    }
+
+    private static final class Lease {
+        private final String owner;
+        private final long expiresAt;
+
+        private Lease(final String owner, final long expiresAt) {
+            this.owner = owner;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package com.networknt.rule.generic.token;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * Bounded pool of pre-signed jwt assertions for a single jwt schema.
+ * Assertions are minted in the background, so a refresh can take one and send its token request without signing first.
+ * Every assertion is kept for its ttl, or maxAge when that is shorter or the jwt has no expiry fields, so its iat stays recent.
+ * The pool is only topped up when an assertion is taken, so an idle gateway does not keep signing assertions nobody uses.
+ * An assertion is discarded instead of handed out when it expires within the safety margin, or when it was signed before
+ * a keystore reload. When the pool has nothing usable, the assertion is minted on the calling thread like before.
+ */
+public class JwtAssertionPool {
+
+    private static final Logger LOG = LoggerFactory.getLogger(JwtAssertionPool.class);
+
+    private final BlockingQueue<Assertion> assertions;
+    private final Supplier<String> minter;
+    private final Executor executor;
+    private final long lifetime;
+    private final long margin;
+    private final AtomicBoolean refilling = new AtomicBoolean(false);
+    private volatile boolean closed;
+
+    /**
+     * @param size - maximum number of assertions kept ready.
+     * @param ttlMillis - lifetime of an assertion in milliseconds, 0 or less if assertions do not expire.
+     * @param maxAge - an assertion is not kept longer than this many milliseconds, whatever its ttl.
+     * @param margin - an assertion expiring within this many milliseconds is not handed out.
+     * @param minter - creates a new signed assertion.
+     * @param executor - runs the background minting.
+     */
+    public JwtAssertionPool(final int size, final long ttlMillis, final long maxAge, final long margin, final Supplier<String> minter, final Executor executor) {
+        this.assertions = new ArrayBlockingQueue<>(Math.max(1, size));
+        this.lifetime = ttlMillis <= 0 ? maxAge : maxAge <= 0 ? ttlMillis : Math.min(ttlMillis, maxAge);
+        this.margin = Math.max(0, margin);
+        this.minter = minter;
+        this.executor = executor;
+
+        if (this.lifetime <= this.margin)
+            LOG.warn("Jwt assertion lifetime of {}ms is not longer than the assertion pool margin of {}ms, assertions will be minted on demand.", this.lifetime, this.margin);
+    }
+
+    /**
+     * Takes a usable assertion from the pool, or mints one if there is none. Each assertion is handed out once.
+     *
+     * @return - a signed jwt assertion.
+     */
+    public String take() {
+
+        if (!this.isPoolable())
+            return this.minter.get();
+
+        Assertion assertion;
+        while ((assertion = this.assertions.poll()) != null) {
+
+            if (this.isUsable(assertion)) {
+                this.refill();
+                return assertion.jwt;
+            }
+
+            LOG.trace("Discarding pre-signed assertion that expires within the safety margin or predates a keystore reload.");
+        }
+
+        LOG.debug("Assertion pool is empty, signing an assertion on demand.");
+        this.refill();
+        return this.minter.get();
+    }
+
+    /**
+     * @return - number of assertions currently in the pool, usable or not.
+     */
+    public int size() {
+        return this.assertions.size();
+    }
+
+    /**
+     * Tops the pool up in the background. Only one refill runs at a time.
+     */
+    public void refill() {
+
+        if (!this.isPoolable() || this.closed || !this.refilling.compareAndSet(false, true))
+            return;
+
+        this.executor.execute(() -> {
+            try {
+
+                /* drop anything no longer usable before minting new ones. */
+                this.assertions.removeIf(assertion -> !this.isUsable(assertion));
+
+                while (this.assertions.remainingCapacity() > 0)
+                    if (!this.assertions.offer(this.mint()))
+                        break;
+
+            } catch (RuntimeException e) {
+                LOG.error("Pre-signing jwt assertions failed: {}", e.getMessage());
+
+            } finally {
+                this.refilling.set(false);
+            }
+        });
+    }
+
+    /**
+     * Stops the background refills. Assertions already in the pool can still be taken.
+     */
+    public void close() {
+        this.closed = true;
+    }
+
+    private boolean isPoolable() {
+        return this.lifetime > this.margin;
+    }
+
+    private boolean isUsable(final Assertion assertion) {
+        return assertion.generation == TokenKeyStoreManager.getGeneration()
+                && assertion.expiresAt - System.currentTimeMillis() > this.margin;
+    }
+
+    private Assertion mint() {
+        final var generation = TokenKeyStoreManager.getGeneration();
+
+        /* expiry fields are whole seconds from the time of signing, so round down the same way. */
+        final var signedAt = System.currentTimeMillis() / 1000 * 1000;
+        return new Assertion(this.minter.get(), signedAt + this.lifetime / 1000 * 1000, generation);
+    }
+
+    private static final class Assertion {
+        private final String jwt;
+        private final long expiresAt;
+        private final long generation;
+
+        private Assertion(final String jwt, final long expiresAt, final long generation) {
+            this.jwt = jwt;
+            this.expiresAt = expiresAt;
+            this.generation = generation;
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package com.networknt.rule.generic.token;
+
+import com.networknt.rule.generic.token.schema.TokenSchema;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded cache of the per-key copies of a token schema with a cacheKey.
+ * Lookups of cached keys do not lock. Keys are also kept in the order they were added, and once the cache holds more than
+ * maxEntries keys the oldest key is evicted, unless it was used again since it was added or last checked and its token has
+ * not expired, in which case it moves to the back of the line (second chance, an approximation of least recently used).
+ * Eviction costs the same however many keys are cached, so keys taken from requests cannot make it scan the whole cache,
+ * and keys seen only once are evicted before the keys that keep sending traffic.
+ * Every key has its own shared variables, so its token is refreshed independently and only once per expiry.
+ */
+public class KeyedTokenCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(KeyedTokenCache.class);
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    /* keys in the order they are checked for eviction, only touched when a key is added. */
+    private final Deque<Entry> evictionOrder = new ArrayDeque<>();
+    private final TokenSchema schema;
+    private final int maxEntries;
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * @param schema - the configured schema with a cacheKey, the key copies are created from.
+     */
+    public KeyedTokenCache(final TokenSchema schema) {
+        this.schema = schema;
+        this.maxEntries = Math.max(1, schema.getCacheKey().getMaxEntries());
+    }
+
+    /**
+     * @return - the configured schema the key copies are created from.
+     */
+    public TokenSchema getSchema() {
+        return this.schema;
+    }
+
+    /**
+     * Gets the schema of a key, creating it from the configured schema on first use.
+     *
+     * @param key - the cache key.
+     * @return - the schema holding the token of the key.
+     */
+    public TokenSchema get(final String key) {
+        var entry = this.entries.get(key);
+
+        if (entry != null) {
+
+            /* only written when it changes, so a hot key does not keep invalidating the cache line. */
+            if (!entry.referenced)
+                entry.referenced = true;
+
+            return entry.schema;
+        }
+
+        final var created = new Entry[1];
+        entry = this.entries.computeIfAbsent(key, k -> created[0] = new Entry(k, this.schema.forCacheKey(k)));
+
+        if (created[0] == null) {
+            entry.referenced = true;
+            return entry.schema;
+        }
+
+        synchronized (this.evictionOrder) {
+            this.evictionOrder.addLast(entry);
+
+            if (this.entries.size() > this.maxEntries)
+                this.evict();
+        }
+
+        return entry.schema;
+    }
+
+    /**
+     * @return - number of keys currently cached.
+     */
+    public int size() {
+        return this.entries.size();
+    }
+
+    /**
+     * @return - number of keys evicted so far.
+     */
+    public long getEvictions() {
+        return this.evictions.get();
+    }
+
+    /* called holding the eviction order lock. Every key gets at most one second chance, so this ends within one pass. */
+    private void evict() {
+        final var now = System.currentTimeMillis();
+
+        while (this.entries.size() > this.maxEntries) {
+            final var candidate = this.evictionOrder.pollFirst();
+
+            if (candidate == null)
+                return;
+
+            final var tokenState = candidate.schema.getSharedVariables().getTokenState();
+
+            /* an expired token is useless, keys still waiting on their first token are not. */
+            final var expired = tokenState.getAccessToken() != null && tokenState.getExpiration() <= now;
+
+            if (candidate.referenced && !expired) {
+                candidate.referenced = false;
+                this.evictionOrder.addLast(candidate);
+                continue;
+            }
+
+            if (this.entries.remove(candidate.key, candidate)) {
+                this.evictions.incrementAndGet();
+
+                if (LOG.isTraceEnabled())
+                    LOG.trace("Evicted token cache key '{}'.", candidate.key);
+            }
+        }
+    }
+
+    private static final class Entry {
+        private final String key;
+        private final TokenSchema schema;
+        private volatile boolean referenced;
+
+        private Entry(final String key, final TokenSchema schema) {
+            this.key = key;
+            this.schema = schema;
+        }
+    }
+}
@@ -0,0 +1,329 @@
+package com.networknt.rule.generic.token;
+
+import com.networknt.rule.generic.token.schema.SharedVariableSchema;
+import com.networknt.rule.generic.token.schema.TokenState;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.PBEKeySpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Encrypted on-disk copy of the cached token of each schema, so a restarted instance can serve the tokens it already had
+ * instead of requesting new ones from the token service.
+ * Every schema is kept in its own file, encrypted with AES-GCM using a key derived from the configured secret with PBKDF2 and a random
+ * salt kept next to the files, so the secret cannot be brute-forced against precomputed tables. Files are keyed by the schema name and the
+ * fingerprint of its definition, which is also bound to the file as associated data, so a token requested with a previous definition of the
+ * schema is not loaded after a restart, and a file copied over another schema's file is rejected.
+ * Files are written to a temporary file, forced to disk, and then moved over the previous file, so a crash never leaves a partial file behind.
+ */
+public class PersistentTokenCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PersistentTokenCache.class);
+    private static final byte FORMAT_VERSION = 2;
+    private static final String FILE_EXTENSION = ".token";
+    private static final String SALT_FILE = ".salt";
+    private static final int SALT_LENGTH = 16;
+    private static final String KEY_DERIVATION = "PBKDF2WithHmacSHA256";
+    private static final int KEY_DERIVATION_ITERATIONS = 310000;
+    private static final int KEY_LENGTH = 256;
+    private static final String CIPHER = "AES/GCM/NoPadding";
+    private static final int IV_LENGTH = 12;
+    private static final int TAG_LENGTH = 128;
+
+    private final Path directory;
+    private final SecretKeySpec key;
+    private final SecureRandom random = new SecureRandom();
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(runnable -> {
+        final var thread = new Thread(runnable, "token-transformer-token-cache");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * @param directory - directory the token files are kept in. Created if it does not exist, along with its salt file.
+     * @param secret - secret the token files are encrypted with.
+     */
+    public PersistentTokenCache(final Path directory, final char[] secret) {
+
+        if (directory == null || secret == null || secret.length == 0)
+            throw new IllegalArgumentException("A directory and a secret are required for the persistent token cache.");
+
+        this.directory = directory;
+        this.key = new SecretKeySpec(deriveKey(secret, this.loadOrCreateSalt()), "AES");
+    }
+
+    /**
+     * Loads the persisted token of a schema into its shared variables.
+     * The token is only used if it is still valid including the waitLength grace period, and newer than the token already held.
+     *
+     * @param tokenSchema - key of the token schema, its name and the fingerprint of its definition.
+     * @param sharedVariables - shared variables of the schema.
+     * @return - true if the persisted token was loaded.
+     */
+    public boolean load(final String tokenSchema, final SharedVariableSchema sharedVariables) {
+        final var persisted = this.read(tokenSchema);
+
+        if (persisted == null)
+            return false;
+
+        final var waitLengthAsMillis = sharedVariables.getTokenTtlUnit().unitToMillis(sharedVariables.getWaitLength());
+
+        if (persisted.getAccessToken() == null || System.currentTimeMillis() >= persisted.getExpiration() - waitLengthAsMillis) {
+            LOG.debug("Persisted token for schema '{}' is expired.", tokenSchema);
+            return false;
+        }
+
+        if (persisted.getExpiration() <= sharedVariables.getExpiration())
+            return false;
+
+        final var staged = sharedVariables.copy();
+        staged.setAccessToken(persisted.getAccessToken());
+        staged.setExpiration(persisted.getExpiration());
+        sharedVariables.publish(staged);
+
+        LOG.debug("Loaded persisted token for schema '{}'.", tokenSchema);
+        return true;
+    }
+
+    /**
+     * Writes the current token of a schema to disk.
+     *
+     * @param tokenSchema - key of the token schema, its name and the fingerprint of its definition.
+     * @param sharedVariables - shared variables of the schema.
+     *
+     * @throws IOException - if the file cannot be written.
+     */
+    public void save(final String tokenSchema, final SharedVariableSchema sharedVariables) throws IOException {
+        this.write(tokenSchema, sharedVariables.getTokenState());
+    }
+
+    /**
+     * Reads the persisted token of a schema, valid or not.
+     *
+     * @param tokenSchema - key of the token schema, its name and the fingerprint of its definition.
+     * @return - the persisted token and expiration, or null if there is no readable file.
+     */
+    public TokenState read(final String tokenSchema) {
+        try {
+            return this.decrypt(tokenSchema, Files.readAllBytes(this.fileFor(tokenSchema)));
+
+        } catch (NoSuchFileException e) {
+            LOG.trace("No persisted token for schema '{}'.", tokenSchema);
+            return null;
+
+        } catch (IOException | GeneralSecurityException e) {
+            LOG.warn("Ignoring unreadable persisted token for schema '{}': {}", tokenSchema, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Writes the token of a schema to disk, replacing the previous file.
+     *
+     * @param tokenSchema - key of the token schema, its name and the fingerprint of its definition.
+     * @param tokenState - the token and expiration to write.
+     *
+     * @throws IOException - if the file cannot be written.
+     */
+    public void write(final String tokenSchema, final TokenState tokenState) throws IOException {
+
+        if (tokenState.getAccessToken() == null)
+            return;
+
+        final byte[] content;
+        try {
+            content = this.encrypt(tokenSchema, tokenState);
+
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Could not encrypt the token for schema '" + tokenSchema + "'.", e);
+        }
+
+        Files.createDirectories(this.directory);
+        final var file = this.fileFor(tokenSchema);
+        final var temp = Files.createTempFile(this.directory, file.getFileName().toString(), ".tmp");
+
+        try {
+
+            try (final var channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                final var buffer = ByteBuffer.wrap(content);
+
+                while (buffer.hasRemaining())
+                    channel.write(buffer);
+
+                channel.force(true);
+            }
+
+            try {
+                Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Writes the current token of a schema to disk in the background. Failures are logged.
+     *
+     * @param tokenSchema - key of the token schema, its name and the fingerprint of its definition.
+     * @param sharedVariables - shared variables of the schema.
+     */
+    public void saveAsync(final String tokenSchema, final SharedVariableSchema sharedVariables) {
+        this.writer.execute(() -> {
+            try {
+                this.save(tokenSchema, sharedVariables);
+
+            } catch (IOException | RuntimeException e) {
+                LOG.error("Could not persist the token for schema '{}': {}", tokenSchema, e.getMessage());
+            }
+        });
+    }
+
+    Path fileFor(final String tokenSchema) {
+        final var fileName = new StringBuilder(tokenSchema.length());
+
+        for (final var c : tokenSchema.toCharArray())
+            fileName.append(Character.isLetterOrDigit(c) || c == '-' || c == '_' ? c : '_');
+
+        /* names that only differ in replaced characters still get their own file. */
+        if (!fileName.toString().equals(tokenSchema))
+            fileName.append('-').append(Integer.toHexString(tokenSchema.hashCode()));
+
+        return this.directory.resolve(fileName.append(FILE_EXTENSION).toString());
+    }
+
+    private byte[] encrypt(final String tokenSchema, final TokenState tokenState) throws IOException, GeneralSecurityException {
+        final var plain = new ByteArrayOutputStream();
+
+        try (final var out = new DataOutputStream(plain)) {
+            out.writeLong(tokenState.getExpiration());
+            final var accessToken = tokenState.getAccessToken().getBytes(StandardCharsets.UTF_8);
+            out.writeInt(accessToken.length);
+            out.write(accessToken);
+        }
+
+        final var iv = new byte[IV_LENGTH];
+        this.random.nextBytes(iv);
+
+        final var cipher = Cipher.getInstance(CIPHER);
+        cipher.init(Cipher.ENCRYPT_MODE, this.key, new GCMParameterSpec(TAG_LENGTH, iv));
+        cipher.updateAAD(tokenSchema.getBytes(StandardCharsets.UTF_8));
+        final var encrypted = cipher.doFinal(plain.toByteArray());
+
+        return ByteBuffer.allocate(1 + IV_LENGTH + encrypted.length)
+                .put(FORMAT_VERSION)
+                .put(iv)
+                .put(encrypted)
+                .array();
+    }
+
+    private TokenState decrypt(final String tokenSchema, final byte[] content) throws IOException, GeneralSecurityException {
+
+        if (content.length <= 1 + IV_LENGTH || content[0] != FORMAT_VERSION)
+            throw new IOException("Unsupported token file format.");
+
+        final var cipher = Cipher.getInstance(CIPHER);
+        cipher.init(Cipher.DECRYPT_MODE, this.key, new GCMParameterSpec(TAG_LENGTH, content, 1, IV_LENGTH));
+        cipher.updateAAD(tokenSchema.getBytes(StandardCharsets.UTF_8));
+        final var plain = cipher.doFinal(content, 1 + IV_LENGTH, content.length - 1 - IV_LENGTH);
+
+        try (final var in = new DataInputStream(new ByteArrayInputStream(plain))) {
+            final var expiration = in.readLong();
+            final var accessToken = new byte[in.readInt()];
+            in.readFully(accessToken);
+            return new TokenState(new String(accessToken, StandardCharsets.UTF_8), expiration, null);
+        }
+    }
+
+    /**
+     * Reads the salt of the directory, creating it if this is the first cache using the directory.
+     * The salt is linked into place, so instances sharing the directory that start together all end up with the same salt.
+     *
+     * @return - the salt of the directory.
+     */
+    private byte[] loadOrCreateSalt() {
+        final var saltFile = this.directory.resolve(SALT_FILE);
+
+        try {
+
+            if (!Files.exists(saltFile)) {
+                Files.createDirectories(this.directory);
+                final var salt = new byte[SALT_LENGTH];
+                this.random.nextBytes(salt);
+                final var temp = Files.createTempFile(this.directory, SALT_FILE, ".tmp");
+
+                try {
+                    Files.write(temp, salt);
+
+                    try {
+                        Files.createLink(saltFile, temp);
+
+                    } catch (FileAlreadyExistsException e) {
+                        throw e;
+
+                    } catch (UnsupportedOperationException | IOException e) {
+
+                        /* no hard links on this file system, a move does not replace a salt created in the meantime either. */
+                        Files.move(temp, saltFile);
+                    }
+
+                } catch (FileAlreadyExistsException e) {
+                    LOG.debug("Salt file in '{}' was created by another instance.", this.directory);
+
+                } finally {
+                    Files.deleteIfExists(temp);
+                }
+            }
+
+            final var salt = Files.readAllBytes(saltFile);
+
+            if (salt.length != SALT_LENGTH)
+                throw new IllegalStateException("Salt file '" + saltFile + "' is corrupt, delete it along with the token files.");
+
+            return salt;
+
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not read or create the salt file '" + saltFile + "': " + e.getMessage(), e);
+        }
+    }
+
+    private static byte[] deriveKey(final char[] secret, final byte[] salt) {
+        final var spec = new PBEKeySpec(secret, salt, KEY_DERIVATION_ITERATIONS, KEY_LENGTH);
+
+        try {
+            return SecretKeyFactory.getInstance(KEY_DERIVATION).generateSecret(spec).getEncoded();
+
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(KEY_DERIVATION + " is not available.", e);
+
+        } finally {
+            spec.clearPassword();
+        }
+    }
+}
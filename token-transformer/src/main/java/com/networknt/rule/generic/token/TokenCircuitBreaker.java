@@ -0,0 +1,183 @@
+package com.networknt.rule.generic.token;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Circuit breaker for the token endpoint of a single schema.
+ * After a number of failed token requests in a row the circuit opens, and token requests are not sent until the backoff runs out.
+ * The backoff doubles every time the circuit opens again without a success in between, up to a maximum, and a random jitter is added
+ * so instances do not all retry at once. Once the backoff runs out one trial request is let through, which closes the circuit on success
+ * and opens it again on failure.
+ */
+public class TokenCircuitBreaker {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TokenCircuitBreaker.class);
+
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    private final String tokenSchema;
+    private final int threshold;
+    private final long backoff;
+    private final long maxBackoff;
+    private final long jitter;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private int consecutiveOpens;
+    private long openUntil;
+    private long rejections;
+
+    /**
+     * @param tokenSchema - name of the token schema, for logging.
+     * @param threshold - number of failed requests in a row that opens the circuit.
+     * @param backoff - time in milliseconds the circuit stays open the first time.
+     * @param maxBackoff - upper bound in milliseconds of the doubled backoff.
+     * @param jitter - upper bound in milliseconds of the random delay added to each backoff.
+     */
+    public TokenCircuitBreaker(final String tokenSchema, final int threshold, final long backoff, final long maxBackoff, final long jitter) {
+        this.tokenSchema = tokenSchema;
+        this.threshold = Math.max(1, threshold);
+        this.backoff = Math.max(0, backoff);
+        this.maxBackoff = Math.max(this.backoff, maxBackoff);
+        this.jitter = Math.max(0, jitter);
+    }
+
+    /**
+     * Checks if a token request can be sent. When the backoff of an open circuit has run out, the caller gets the trial request
+     * and must report its outcome with {@link #recordSuccess()} or {@link #recordFailure()}.
+     *
+     * @return - true if the request can be sent.
+     */
+    public synchronized boolean allowRequest() {
+
+        if (this.state == State.CLOSED)
+            return true;
+
+        if (this.state == State.OPEN && System.currentTimeMillis() >= this.openUntil) {
+            LOG.debug("Backoff for schema '{}' is over, sending a trial token request.", this.tokenSchema);
+            this.state = State.HALF_OPEN;
+            return true;
+        }
+
+        this.rejections++;
+        return false;
+    }
+
+    /**
+     * Hands the trial request back when the caller got a token without calling the token service, i.e. one shared by another instance.
+     * The circuit stays open with its backoff run out, so the next caller gets the trial request instead.
+     */
+    public synchronized void releaseTrial() {
+
+        if (this.state == State.HALF_OPEN)
+            this.state = State.OPEN;
+    }
+
+    /**
+     * Closes the circuit after a successful token request.
+     */
+    public synchronized void recordSuccess() {
+
+        if (this.state != State.CLOSED)
+            LOG.info("Token requests for schema '{}' are succeeding again, closing the circuit.", this.tokenSchema);
+
+        this.state = State.CLOSED;
+        this.consecutiveFailures = 0;
+        this.consecutiveOpens = 0;
+    }
+
+    /**
+     * Counts a failed token request, opening the circuit once the threshold is hit or when the trial request failed.
+     */
+    public synchronized void recordFailure() {
+        this.consecutiveFailures++;
+
+        if (this.state == State.HALF_OPEN || this.consecutiveFailures >= this.threshold) {
+            final var delay = Math.min(this.maxBackoff, this.backoff << Math.min(this.consecutiveOpens, 30))
+                    + (this.jitter == 0 ? 0 : ThreadLocalRandom.current().nextLong(this.jitter));
+
+            this.consecutiveOpens++;
+            this.openUntil = System.currentTimeMillis() + delay;
+            this.state = State.OPEN;
+            LOG.warn("Token requests for schema '{}' failed {} times in a row, suspending them for {}ms.", this.tokenSchema, this.consecutiveFailures, delay);
+        }
+    }
+
+    /**
+     * @return - the time in milliseconds since the epoch a token request will be let through again, in the past if the circuit is not open.
+     */
+    public synchronized long getOpenUntil() {
+        return this.openUntil;
+    }
+
+    /**
+     * @return - name of the token schema the circuit belongs to.
+     */
+    public String getTokenSchema() {
+        return this.tokenSchema;
+    }
+
+    /**
+     * @return - a snapshot of the circuit state and counters.
+     */
+    public synchronized Stats getStats() {
+        return new Stats(this.state, this.consecutiveFailures, this.openUntil, this.rejections);
+    }
+
+    /**
+     * State and counters of a circuit breaker at the time it was taken.
+     */
+    public static final class Stats {
+        private final State state;
+        private final int consecutiveFailures;
+        private final long openUntil;
+        private final long rejections;
+
+        private Stats(final State state, final int consecutiveFailures, final long openUntil, final long rejections) {
+            this.state = state;
+            this.consecutiveFailures = consecutiveFailures;
+            this.openUntil = openUntil;
+            this.rejections = rejections;
+        }
+
+        /**
+         * @return - state of the circuit.
+         */
+        public State getState() {
+            return state;
+        }
+
+        /**
+         * @return - number of failed token requests since the last success.
+         */
+        public int getConsecutiveFailures() {
+            return consecutiveFailures;
+        }
+
+        /**
+         * @return - time in milliseconds since the epoch the current backoff runs out.
+         */
+        public long getOpenUntil() {
+            return openUntil;
+        }
+
+        /**
+         * @return - number of token requests not sent because the circuit was open.
+         */
+        public long getRejections() {
+            return rejections;
+        }
+
+        @Override
+        public String toString() {
+            return "Stats{state=" + state + ", consecutiveFailures=" + consecutiveFailures + ", openUntil=" + openUntil + ", rejections=" + rejections + "}";
+        }
+    }
+}
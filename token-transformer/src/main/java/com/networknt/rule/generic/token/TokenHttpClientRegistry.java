@@ -0,0 +1,276 @@
+package com.networknt.rule.generic.token;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.net.ssl.SSLContext;
+import java.net.InetSocketAddress;
+import java.net.ProxySelector;
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Process-wide registry of http clients used for token requests.
+ * Clients are keyed by their transport settings (the owner of the ssl context, proxy and http version), so token schemas with the same
+ * settings share one client along with its selector thread, connection pool and keep-alive connections.
+ * The ssl context is only built when a client is created. When the keystore generation of an owner changes, its client is replaced
+ * and the superseded client is shut down right away, letting requests already sent on it finish.
+ * Clients that are not used for longer than the idle timeout are closed and removed the next time the registry is used.
+ */
+public class TokenHttpClientRegistry {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TokenHttpClientRegistry.class);
+
+    private final Map<ClientKey, ClientEntry> clients = new ConcurrentHashMap<>();
+    private final long idleTimeout;
+    private final AtomicLong lastEviction = new AtomicLong(System.currentTimeMillis());
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong replacements = new AtomicLong();
+
+    /**
+     * @param idleTimeout - time in milliseconds a client can go unused before it is closed. 0 or less keeps clients forever.
+     */
+    public TokenHttpClientRegistry(final long idleTimeout) {
+        this.idleTimeout = idleTimeout;
+    }
+
+    /**
+     * Gets the shared client for the given transport settings, creating it if there is none yet,
+     * or replacing it if it was created for another generation of the ssl context.
+     *
+     * @param sslContextOwner - what the ssl context is built from, like the ssl context schema of a token schema. Compared by instance, not by content.
+     * @param generation - keystore generation the ssl context is built from.
+     * @param sslContext - builds the ssl context, only called when a client is created.
+     * @param proxyHost - proxy host, or null for no proxy.
+     * @param proxyPort - proxy port.
+     * @param version - http version of the client.
+     * @param connectTimeout - connect timeout used when the client is created.
+     * @return - the shared http client.
+     */
+    public HttpClient getClient(final Object sslContextOwner, final long generation, final Supplier<SSLContext> sslContext, final String proxyHost, final int proxyPort, final HttpClient.Version version, final Duration connectTimeout) {
+        this.evictIdleIfDue();
+
+        final var key = new ClientKey(sslContextOwner, proxyHost, proxyPort, version);
+        final var now = System.currentTimeMillis();
+        final var superseded = new ClientEntry[1];
+        final var entry = this.clients.compute(key, (clientKey, existing) -> {
+
+            if (existing != null && existing.generation == generation) {
+                this.hits.incrementAndGet();
+                existing.lastUsed = now;
+                return existing;
+            }
+
+            superseded[0] = existing;
+            this.misses.incrementAndGet();
+            LOG.debug("Creating shared http client for {} at generation {}.", clientKey, generation);
+            return new ClientEntry(this.buildClient(clientKey, sslContext.get(), connectTimeout), generation, now);
+        });
+
+        if (superseded[0] != null) {
+            LOG.debug("Shutting down http client for {} superseded by generation {}.", key, generation);
+            superseded[0].client.shutdown();
+            this.replacements.incrementAndGet();
+        }
+
+        return entry.client;
+    }
+
+    /**
+     * Shuts down and removes every client that has not been used within the idle timeout.
+     * Runs on whatever request thread trips the eviction, so clients are only told to shut down without waiting on their exchanges.
+     *
+     * @return - the number of clients evicted.
+     */
+    public int evictIdle() {
+        this.lastEviction.set(System.currentTimeMillis());
+
+        if (this.idleTimeout <= 0)
+            return 0;
+
+        var evicted = 0;
+        for (final var key : this.clients.keySet()) {
+            final var removed = new ClientEntry[1];
+
+            /* checked under compute so a client cannot be handed out and closed at the same time. */
+            this.clients.computeIfPresent(key, (clientKey, entry) -> {
+
+                if (System.currentTimeMillis() - entry.lastUsed < this.idleTimeout)
+                    return entry;
+
+                removed[0] = entry;
+                return null;
+            });
+
+            if (removed[0] != null) {
+                LOG.debug("Shutting down idle http client for {}.", key);
+                removed[0].client.shutdown();
+                this.evictions.incrementAndGet();
+                evicted++;
+            }
+        }
+        return evicted;
+    }
+
+    /**
+     * @return - a snapshot of the registry counters.
+     */
+    public Stats getStats() {
+        return new Stats(this.clients.size(), this.hits.get(), this.misses.get(), this.evictions.get(), this.replacements.get());
+    }
+
+    /**
+     * Closes and removes every client.
+     */
+    public void shutdown() {
+        for (final var key : this.clients.keySet()) {
+            final var entry = this.clients.remove(key);
+
+            if (entry != null)
+                entry.client.close();
+        }
+    }
+
+    private void evictIdleIfDue() {
+        final var last = this.lastEviction.get();
+
+        /* only one caller runs the eviction, at most once per half idle timeout. */
+        if (this.idleTimeout > 0
+                && System.currentTimeMillis() - last >= this.idleTimeout / 2
+                && this.lastEviction.compareAndSet(last, System.currentTimeMillis()))
+            this.evictIdle();
+    }
+
+    private HttpClient buildClient(final ClientKey key, final SSLContext sslContext, final Duration connectTimeout) {
+        final var clientBuilder = HttpClient.newBuilder()
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .connectTimeout(connectTimeout)
+                .sslContext(sslContext)
+                .version(key.version);
+
+        if (key.proxyHost != null)
+            clientBuilder.proxy(ProxySelector.of(new InetSocketAddress(key.proxyHost, key.proxyPort)));
+
+        return clientBuilder.build();
+    }
+
+    /**
+     * Counters of the registry at the time it was taken.
+     */
+    public static final class Stats {
+        private final int clients;
+        private final long hits;
+        private final long misses;
+        private final long evictions;
+        private final long replacements;
+
+        private Stats(final int clients, final long hits, final long misses, final long evictions, final long replacements) {
+            this.clients = clients;
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+            this.replacements = replacements;
+        }
+
+        /**
+         * @return - number of open clients.
+         */
+        public int getClients() {
+            return clients;
+        }
+
+        /**
+         * @return - number of lookups served by an existing client.
+         */
+        public long getHits() {
+            return hits;
+        }
+
+        /**
+         * @return - number of lookups that created a new client.
+         */
+        public long getMisses() {
+            return misses;
+        }
+
+        /**
+         * @return - number of clients closed for being idle.
+         */
+        public long getEvictions() {
+            return evictions;
+        }
+
+        /**
+         * @return - number of clients shut down because their ssl context was replaced.
+         */
+        public long getReplacements() {
+            return replacements;
+        }
+
+        @Override
+        public String toString() {
+            return "Stats{clients=" + clients + ", hits=" + hits + ", misses=" + misses + ", evictions=" + evictions + ", replacements=" + replacements + "}";
+        }
+    }
+
+    private static final class ClientEntry {
+        private final HttpClient client;
+        private final long generation;
+        private volatile long lastUsed;
+
+        private ClientEntry(final HttpClient client, final long generation, final long lastUsed) {
+            this.client = client;
+            this.generation = generation;
+            this.lastUsed = lastUsed;
+        }
+    }
+
+    private static final class ClientKey {
+        private final Object sslContextOwner;
+        private final String proxyHost;
+        private final int proxyPort;
+        private final HttpClient.Version version;
+
+        private ClientKey(final Object sslContextOwner, final String proxyHost, final int proxyPort, final HttpClient.Version version) {
+            this.sslContextOwner = sslContextOwner;
+            this.proxyHost = proxyHost;
+            this.proxyPort = proxyPort;
+            this.version = version;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+
+            if (this == o)
+                return true;
+
+            if (!(o instanceof ClientKey))
+                return false;
+
+            final var other = (ClientKey) o;
+            return this.sslContextOwner == other.sslContextOwner
+                    && this.proxyPort == other.proxyPort
+                    && Objects.equals(this.proxyHost, other.proxyHost)
+                    && this.version == other.version;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(System.identityHashCode(this.sslContextOwner), this.proxyHost, this.proxyPort, this.version);
+        }
+
+        @Override
+        public String toString() {
+            return "ClientKey{sslContextOwner=" + System.identityHashCode(this.sslContextOwner)
+                    + ", proxy=" + (this.proxyHost == null ? "none" : this.proxyHost + ":" + this.proxyPort)
+                    + ", version=" + this.version + "}";
+        }
+    }
+}
@@ -8,22 +8,42 @@ import javax.net.ssl.KeyManager;
 import javax.net.ssl.KeyManagerFactory;
 import javax.net.ssl.TrustManager;
 import javax.net.ssl.TrustManagerFactory;
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchService;
 import java.security.*;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * Caches loading keystores
+ * Caches loading keystores, along with the private keys, key managers and trust managers derived from them.
+ * Every keystore is loaded once, and is only loaded again when its file changes on disk. A file watcher picks up
+ * rotated keystores in the background, so certificate rotation needs no restart and nothing is checked on the request path.
  */
 public class TokenKeyStoreManager {
     private static final Logger LOG = LoggerFactory.getLogger(TokenKeyStoreManager.class);
-    private static final Map<String, KeyStore> KEY_STORE_MAP = new HashMap<>();
+    private static final String CONFIG_DIR_PROPERTY = "light-4j-config-dir";
+    private static final Map<String, KeyStoreEntry> KEY_STORE_MAP = new ConcurrentHashMap<>();
 
-    private void addKeyStore(final String keyStoreName, final char[] keyStorePass) {
+    /* bumped on every reload, so cached objects built from an older keystore (i.e. ssl contexts) can be rebuilt. */
+    private static final AtomicLong GENERATION = new AtomicLong();
 
-        if (keyStoreName == null || keyStorePass == null)
-            throw new IllegalArgumentException("name and pass must not be null");
+    private static final Set<Path> WATCHED_DIRECTORIES = ConcurrentHashMap.newKeySet();
+    private static volatile WatchService watchService;
 
-        KEY_STORE_MAP.put(keyStoreName, TlsUtil.loadKeyStore(keyStoreName, keyStorePass));
+    /**
+     * @return - the number of keystore reloads so far.
+     */
+    public static long getGeneration() {
+        return GENERATION.get();
     }
 
     /**
@@ -31,37 +51,47 @@ public class TokenKeyStoreManager {
      *
      * @param keyStoreName - name of the keystore being retrieved.
      * @param keyStorePass - char array pass for the keystore.
-     * @return - returns a keystore.
+     * @return - returns the cached keystore entry.
      */
-    private KeyStore getKeyStore(final String keyStoreName, final char[] keyStorePass) {
+    private KeyStoreEntry getKeyStore(final String keyStoreName, final char[] keyStorePass) {
+
+        if (keyStoreName == null || keyStorePass == null)
+            throw new IllegalArgumentException("name and pass must not be null");
+
+        return KEY_STORE_MAP.computeIfAbsent(keyStoreName, name -> {
+            final var entry = KeyStoreEntry.load(name, keyStorePass);
 
-        if (!KEY_STORE_MAP.containsKey(keyStoreName))
-            this.addKeyStore(keyStoreName, keyStorePass);
+            if (entry.path != null)
+                watch(entry.path.getParent());
 
-        return KEY_STORE_MAP.get(keyStoreName);
+            return entry;
+        });
     }
 
     public PrivateKey getPrivateKey(final String keyStoreName, final char[] keyStorePass, final String keyAlias, final char[] keyPass) {
         if (keyStoreName == null || keyStorePass == null || keyAlias == null || keyPass == null)
             throw new IllegalArgumentException("keyStoreName, keyStorePass, keyAlias, and keyPass must not be null.");
 
-        final var keystore = this.getKeyStore(keyStoreName, keyStorePass);
-        /* load key from keystore based on provided alias */
-        try {
-            return (PrivateKey) keystore.getKey(keyAlias, keyPass);
+        final var entry = this.getKeyStore(keyStoreName, keyStorePass);
+        return (PrivateKey) entry.derived.computeIfAbsent(new DerivedKey("privateKey", keyAlias, keyPass), derivedKey -> {
 
-        } catch (KeyStoreException e) {
-            LOG.error("Keystore was not initialized correctly: {}", e.getMessage());
-            return null;
+            /* load key from keystore based on provided alias */
+            try {
+                return entry.keyStore.getKey(keyAlias, keyPass);
 
-        } catch (NoSuchAlgorithmException e) {
-            LOG.error("Algorithm for recovering key was not found: {}", e.getMessage());
-            return null;
+            } catch (KeyStoreException e) {
+                LOG.error("Keystore was not initialized correctly: {}", e.getMessage());
+                return null;
 
-        } catch (UnrecoverableKeyException e) {
-            LOG.error("Key could not be recovered: {}", e.getMessage());
-            return null;
-        }
+            } catch (NoSuchAlgorithmException e) {
+                LOG.error("Algorithm for recovering key was not found: {}", e.getMessage());
+                return null;
+
+            } catch (UnrecoverableKeyException e) {
+                LOG.error("Key could not be recovered: {}", e.getMessage());
+                return null;
+            }
+        });
     }
 
     public TrustManager[] getTrustManagers(final String keyStoreName, final char[] keyStorePass, final String algorithm) {
@@ -75,25 +105,30 @@ public class TokenKeyStoreManager {
 
         else alg = algorithm;
 
-        final var keyStore = this.getKeyStore(keyStoreName, keyStorePass);
-        final TrustManagerFactory trustManagerFactory;
+        final var entry = this.getKeyStore(keyStoreName, keyStorePass);
+        final var trustManagers = (TrustManager[]) entry.derived.computeIfAbsent(new DerivedKey("trustManagers", alg, null), derivedKey -> {
+            final TrustManagerFactory trustManagerFactory;
 
-        try {
-            trustManagerFactory = TrustManagerFactory.getInstance(alg);
+            try {
+                trustManagerFactory = TrustManagerFactory.getInstance(alg);
 
-        } catch (NoSuchAlgorithmException e) {
-            LOG.error("No Provider supports a TrustManagerFactory implementation for the specified algorithm: '{}'", alg);
-            return new TrustManager[0];
-        }
+            } catch (NoSuchAlgorithmException e) {
+                LOG.error("No Provider supports a TrustManagerFactory implementation for the specified algorithm: '{}'", alg);
+                return null;
+            }
 
-        try {
-            trustManagerFactory.init(keyStore);
-            return trustManagerFactory.getTrustManagers();
+            try {
+                trustManagerFactory.init(entry.keyStore);
+                return trustManagerFactory.getTrustManagers();
 
-        } catch (KeyStoreException e) {
-            LOG.error("Operation failed for '{}': {}", keyStoreName, e.getMessage());
-            return new TrustManager[0];
-        }
+            } catch (KeyStoreException e) {
+                LOG.error("Operation failed for '{}': {}", keyStoreName, e.getMessage());
+                return null;
+            }
+        });
+
+        /* failures are not cached, so the next call tries again. */
+        return trustManagers == null ? new TrustManager[0] : trustManagers.clone();
     }
 
     public KeyManager[] getKeyManagers(final String keyStoreName, final char[] keyStorePass, final char[] privateKeyPass, final String algorithm) {
@@ -107,32 +142,254 @@ public class TokenKeyStoreManager {
 
         else alg = algorithm;
 
-        final var keyStore = this.getKeyStore(keyStoreName, keyStorePass);
-        final KeyManagerFactory keyManagerFactory;
+        final var entry = this.getKeyStore(keyStoreName, keyStorePass);
+        final var keyManagers = (KeyManager[]) entry.derived.computeIfAbsent(new DerivedKey("keyManagers", alg, privateKeyPass), derivedKey -> {
+            final KeyManagerFactory keyManagerFactory;
+
+            try {
+                keyManagerFactory = KeyManagerFactory.getInstance(alg);
+
+            } catch (NoSuchAlgorithmException e) {
+                LOG.error("No Provider supports a KeyManagerFactory implementation for the specified algorithm: '{}'", alg);
+                return null;
+            }
+
+            try {
+                keyManagerFactory.init(entry.keyStore, privateKeyPass);
+                return keyManagerFactory.getKeyManagers();
+
+            } catch (KeyStoreException e) {
+                LOG.error("Operation failed for '{}': {}", keyStoreName, e.getMessage());
+                return null;
+
+            } catch (NoSuchAlgorithmException e) {
+                LOG.error("Specified algorithm '{}' used for keystore '{}' is not available.", alg, keyStoreName);
+                return null;
+
+            } catch (UnrecoverableKeyException e) {
+                LOG.error("Key is not recoverable or the password used for '{}' was incorrect.", keyStoreName);
+                return null;
+            }
+        });
+
+        /* failures are not cached, so the next call tries again. */
+        return keyManagers == null ? new KeyManager[0] : keyManagers.clone();
+    }
+
+    /**
+     * Reloads every cached keystore in the given directory whose content changed.
+     * Every keystore in the directory is checked, whatever file the change was reported for, since a keystore can be a symlink
+     * that is rotated by swapping a link it goes through (i.e. the ..data link of a Kubernetes secret or configmap mount).
+     * A failed reload keeps the current keystore, the next change in the directory tries again.
+     *
+     * @param directory - the directory a change was reported in.
+     */
+    static void reloadIfChanged(final Path directory) {
+        for (final var name : KEY_STORE_MAP.keySet()) {
+            KEY_STORE_MAP.computeIfPresent(name, (keyStoreName, entry) -> {
+
+                if (entry.path == null || !directory.equals(entry.path.getParent()) || !entry.isChanged())
+                    return entry;
+
+                try {
+                    final var reloaded = KeyStoreEntry.load(keyStoreName, entry.keyStorePass);
+                    GENERATION.incrementAndGet();
+                    LOG.info("Reloaded keystore '{}' after a change in '{}'.", keyStoreName, directory);
+                    return reloaded;
+
+                } catch (RuntimeException e) {
+                    LOG.error("Could not reload keystore '{}', keeping the current one: {}", keyStoreName, e.getMessage());
+                    return entry;
+                }
+            });
+        }
+    }
+
+    /**
+     * Starts watching a keystore directory for changes. The watcher thread is started with the first watched directory.
+     *
+     * @param directory - the directory containing a keystore.
+     */
+    private static void watch(final Path directory) {
+
+        if (directory == null || WATCHED_DIRECTORIES.contains(directory))
+            return;
+
+        synchronized (TokenKeyStoreManager.class) {
+
+            if (!WATCHED_DIRECTORIES.add(directory))
+                return;
+
+            try {
+
+                if (watchService == null) {
+                    watchService = FileSystems.getDefault().newWatchService();
+                    final var watcher = new Thread(() -> watchLoop(watchService), "token-transformer-keystore-watcher");
+                    watcher.setDaemon(true);
+                    watcher.start();
+                }
+
+                directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+                LOG.debug("Watching '{}' for keystore changes.", directory);
+
+            } catch (IOException e) {
+                WATCHED_DIRECTORIES.remove(directory);
+                LOG.error("Could not watch '{}' for keystore changes, keystores there will not be reloaded: {}", directory, e.getMessage());
+            }
+        }
+    }
+
+    private static void watchLoop(final WatchService service) {
+        while (true) {
+            try {
+                final var key = service.take();
+
+                /* the events only tell which directory changed, the file names in them may be links the keystores go through. */
+                key.pollEvents();
+                reloadIfChanged((Path) key.watchable());
+                key.reset();
+
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                LOG.debug("Keystore watcher stopped.");
+                return;
+
+            } catch (RuntimeException e) {
+                LOG.error("Keystore watcher failed to process a change: {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Finds the file a keystore is loaded from, the same way it is looked up by TlsUtil:
+     * the externalized config directories first, then the classpath.
+     *
+     * @param keyStoreName - name of the keystore.
+     * @return - the keystore file, or null if it is not a plain file (i.e. packaged inside a jar).
+     */
+    private static Path resolvePath(final String keyStoreName) {
+        final var configDirs = System.getProperty(CONFIG_DIR_PROPERTY, "");
+
+        for (final var configDir : configDirs.split(File.pathSeparator)) {
+
+            if (!configDir.isBlank()) {
+                final var path = Paths.get(configDir, keyStoreName);
+
+                if (Files.isRegularFile(path))
+                    return path.toAbsolutePath();
+            }
+        }
+
+        final var classLoader = Thread.currentThread().getContextClassLoader() != null
+                ? Thread.currentThread().getContextClassLoader()
+                : TokenKeyStoreManager.class.getClassLoader();
+        var resource = classLoader.getResource(keyStoreName);
+
+        if (resource == null)
+            resource = classLoader.getResource("config/" + keyStoreName);
+
+        if (resource != null && "file".equals(resource.getProtocol())) {
+            try {
+                return Paths.get(resource.toURI()).toAbsolutePath();
+
+            } catch (URISyntaxException e) {
+                LOG.debug("Could not resolve keystore '{}' to a file: {}", keyStoreName, e.getMessage());
+            }
+        }
+        return null;
+    }
+
+    /**
+     * A loaded keystore, the file it came from and the objects derived from it.
+     * Reloading replaces the whole entry, which drops everything derived from the old keystore.
+     */
+    private static final class KeyStoreEntry {
+        private final KeyStore keyStore;
+        private final char[] keyStorePass;
+        private final Path path;
+        private final long lastModified;
+        private final byte[] checksum;
+        private final Map<DerivedKey, Object> derived = new ConcurrentHashMap<>();
+
+        private KeyStoreEntry(final KeyStore keyStore, final char[] keyStorePass, final Path path, final long lastModified, final byte[] checksum) {
+            this.keyStore = keyStore;
+            this.keyStorePass = keyStorePass;
+            this.path = path;
+            this.lastModified = lastModified;
+            this.checksum = checksum;
+        }
+
+        private static KeyStoreEntry load(final String keyStoreName, final char[] keyStorePass) {
+            final var path = resolvePath(keyStoreName);
+            final var lastModified = lastModified(path);
+            final var checksum = checksum(path);
+            return new KeyStoreEntry(TlsUtil.loadKeyStore(keyStoreName, keyStorePass), keyStorePass, path, lastModified, checksum);
+        }
+
+        /**
+         * @return - true if the file has a new modified time and different content than when it was loaded.
+         * A file that is gone, or mid-swap, is not a change, the current keystore is kept until a new one shows up.
+         */
+        private boolean isChanged() {
+            return Files.isRegularFile(this.path)
+                    && lastModified(this.path) != this.lastModified
+                    && !Arrays.equals(checksum(this.path), this.checksum);
+        }
+
+        private static long lastModified(final Path path) {
+            try {
+                return path == null ? 0L : Files.getLastModifiedTime(path).toMillis();
+
+            } catch (IOException e) {
+                return 0L;
+            }
+        }
+
+        private static byte[] checksum(final Path path) {
+
+            if (path == null)
+                return new byte[0];
 
-        try {
-            keyManagerFactory = KeyManagerFactory.getInstance(alg);
+            try {
+                return MessageDigest.getInstance("SHA-256").digest(Files.readAllBytes(path));
+
+            } catch (IOException | NoSuchAlgorithmException e) {
+                return new byte[0];
+            }
+        }
+    }
 
-        } catch (NoSuchAlgorithmException e) {
-            LOG.error("No Provider supports a KeyManagerFactory implementation for the specified algorithm: '{}'", alg);
-            return new KeyManager[0];
+    /**
+     * Key for an object derived from a keystore. Passwords are compared by content.
+     */
+    private static final class DerivedKey {
+        private final String type;
+        private final String name;
+        private final char[] pass;
+
+        private DerivedKey(final String type, final String name, final char[] pass) {
+            this.type = type;
+            this.name = name;
+            this.pass = pass == null ? null : pass.clone();
         }
 
-        try {
-            keyManagerFactory.init(keyStore, privateKeyPass);
-            return keyManagerFactory.getKeyManagers();
+        @Override
+        public boolean equals(final Object o) {
 
-        } catch (KeyStoreException e) {
-            LOG.error("Operation failed for '{}': {}", keyStoreName, e.getMessage());
-            return new KeyManager[0];
+            if (this == o)
+                return true;
 
-        } catch (NoSuchAlgorithmException e) {
-            LOG.error("Specified algorithm '{}' used for keystore '{}' is not available.", alg, keyStoreName);
-            return new KeyManager[0];
+            if (!(o instanceof DerivedKey))
+                return false;
+
+            final var other = (DerivedKey) o;
+            return this.type.equals(other.type)
+                    && Objects.equals(this.name, other.name)
+                    && Arrays.equals(this.pass, other.pass);
+        }
 
-        } catch (UnrecoverableKeyException e) {
-            LOG.error("Key is not recoverable or the password used for '{}' was incorrect.", keyStoreName);
-            return new KeyManager[0];
+        @Override
+        public int hashCode() {
+            return 31 * (31 * this.type.hashCode() + Objects.hashCode(this.name)) + Arrays.hashCode(this.pass);
         }
     }
 }
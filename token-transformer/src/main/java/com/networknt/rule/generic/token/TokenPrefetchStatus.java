@@ -0,0 +1,70 @@
+package com.networknt.rule.generic.token;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Outcome of the startup prefetch. The gateway is ready once the prefetch is complete, whether or not every schema got its token,
+ * since schemas without one still get it on their first request.
+ */
+public final class TokenPrefetchStatus {
+
+    public enum Result {
+        /* validated, warmed up, and holding a token. */
+        READY,
+        /* validated and warmed up, but its tokens depend on the request (cacheKey), so there is nothing to prefetch. */
+        SKIPPED,
+        /* invalid, or its token request failed. */
+        FAILED,
+        /* still waiting on its token when the prefetchTimeout ran out. */
+        TIMED_OUT
+    }
+
+    static final TokenPrefetchStatus DISABLED = new TokenPrefetchStatus(true, 0L, Map.of(), Map.of());
+    static final TokenPrefetchStatus RUNNING = new TokenPrefetchStatus(false, 0L, Map.of(), Map.of());
+
+    private final boolean complete;
+    private final long duration;
+    private final Map<String, Result> results;
+    private final Map<String, String> errors;
+
+    TokenPrefetchStatus(final boolean complete, final long duration, final Map<String, Result> results, final Map<String, String> errors) {
+        this.complete = complete;
+        this.duration = duration;
+        this.results = Collections.unmodifiableMap(results);
+        this.errors = Collections.unmodifiableMap(errors);
+    }
+
+    /**
+     * @return - true once the prefetch is complete, or if it is not enabled.
+     */
+    public boolean isComplete() {
+        return complete;
+    }
+
+    /**
+     * @return - milliseconds the prefetch took.
+     */
+    public long getDuration() {
+        return duration;
+    }
+
+    /**
+     * @return - the result of every schema, keyed by tokenSchema name.
+     */
+    public Map<String, Result> getResults() {
+        return results;
+    }
+
+    /**
+     * @return - why a schema failed, keyed by tokenSchema name.
+     */
+    public Map<String, String> getErrors() {
+        return errors;
+    }
+
+    @Override
+    public String toString() {
+        return "TokenPrefetchStatus{complete=" + complete + ", duration=" + duration + "ms, results=" + results + ", errors=" + errors + "}";
+    }
+}
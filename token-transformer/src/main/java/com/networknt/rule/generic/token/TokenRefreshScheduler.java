@@ -0,0 +1,139 @@
+package com.networknt.rule.generic.token;
+
+import com.networknt.rule.generic.token.schema.SharedVariableSchema;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Refreshes cached tokens in the background shortly before they expire.
+ * A refresh is scheduled ahead of the waitLength grace period of each schema, so the on-demand refresh in the request path
+ * is only hit when a background refresh fails or has not happened yet.
+ * A random jitter is taken off every refresh so schemas with the same ttl do not all refresh at the same time.
+ * A refresh is never scheduled sooner than half the remaining token lifetime or MIN_REFRESH_DELAY, so a token whose ttl is
+ * shorter than the waitLength and leadTime does not make the scheduler call the token service in a loop.
+ * Neither the jitter nor that floor moves a refresh into the waitLength grace period, unless the token is already in it.
+ */
+public class TokenRefreshScheduler {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TokenRefreshScheduler.class);
+    static final long MIN_REFRESH_DELAY = 1000L;
+
+    private final ScheduledExecutorService executor;
+    private final Map<String, ScheduledFuture<?>> scheduledRefreshes = new ConcurrentHashMap<>();
+    private final Consumer<String> refresher;
+    private final long leadTime;
+    private final long jitter;
+
+    /**
+     * @param leadTime - time in milliseconds before the waitLength grace period starts that a refresh is scheduled.
+     * @param jitter - upper bound in milliseconds of the random time taken off each refresh.
+     * @param refresher - refreshes the token for the given token schema name.
+     */
+    public TokenRefreshScheduler(final long leadTime, final long jitter, final Consumer<String> refresher) {
+        this.leadTime = Math.max(0, leadTime);
+        this.jitter = Math.max(0, jitter);
+        this.refresher = refresher;
+        this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final var thread = new Thread(runnable, "token-transformer-refresher");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Schedules the next background refresh for a schema based on the expiration of its cached token.
+     * Any refresh already scheduled for the schema is replaced.
+     *
+     * @param tokenSchema - name of the token schema.
+     * @param sharedVariables - shared variables holding the cached token expiration.
+     */
+    public void scheduleRefresh(final String tokenSchema, final SharedVariableSchema sharedVariables) {
+        this.schedule(tokenSchema, this.refreshDelay(sharedVariables, System.currentTimeMillis()));
+    }
+
+    /**
+     * @param sharedVariables - shared variables holding the cached token expiration.
+     * @param now - current time in milliseconds.
+     * @return - delay in milliseconds until the next background refresh, at most the time left until the grace period starts.
+     */
+    long refreshDelay(final SharedVariableSchema sharedVariables, final long now) {
+        final var waitLengthAsMillis = sharedVariables.getTokenTtlUnit().unitToMillis(sharedVariables.getWaitLength());
+        final var untilGracePeriod = sharedVariables.getExpiration() - waitLengthAsMillis - now;
+        final var minDelay = Math.max(MIN_REFRESH_DELAY, (sharedVariables.getExpiration() - now) / 2);
+        final var delay = Math.max(minDelay, untilGracePeriod - this.leadTime - this.nextJitter());
+
+        /* a token already in its grace period is refreshed by the request path, the floor only keeps the scheduler from looping. */
+        return untilGracePeriod > 0 ? Math.min(delay, untilGracePeriod) : delay;
+    }
+
+    /**
+     * Schedules another attempt after a failed background refresh.
+     * Nothing is scheduled once the cached token is past its expiration, the on-demand refresh takes over from there.
+     *
+     * @param tokenSchema - name of the token schema.
+     * @param sharedVariables - shared variables holding the cached token expiration.
+     */
+    public void scheduleRetry(final String tokenSchema, final SharedVariableSchema sharedVariables) {
+        final var delay = Math.max(MIN_REFRESH_DELAY, this.nextJitter());
+
+        if (System.currentTimeMillis() + delay < sharedVariables.getExpiration())
+            this.schedule(tokenSchema, delay);
+
+        else LOG.debug("Cached token for schema '{}' expires before a retry, leaving the refresh to the request path.", tokenSchema);
+    }
+
+    /**
+     * Cancels the scheduled refresh of a schema, if there is one.
+     *
+     * @param tokenSchema - name of the token schema.
+     */
+    public void cancel(final String tokenSchema) {
+        final var scheduled = this.scheduledRefreshes.remove(tokenSchema);
+
+        if (scheduled != null)
+            scheduled.cancel(false);
+    }
+
+    /**
+     * Cancels every scheduled refresh and stops the background thread.
+     */
+    public void shutdown() {
+        this.scheduledRefreshes.values().forEach(scheduled -> scheduled.cancel(false));
+        this.scheduledRefreshes.clear();
+        this.executor.shutdownNow();
+    }
+
+    private void schedule(final String tokenSchema, final long delay) {
+        LOG.debug("Scheduling background refresh for schema '{}' in {}ms.", tokenSchema, delay);
+        this.scheduledRefreshes.compute(tokenSchema, (name, previous) -> {
+
+            if (previous != null)
+                previous.cancel(false);
+
+            return this.executor.schedule(() -> this.refresh(name), delay, TimeUnit.MILLISECONDS);
+        });
+    }
+
+    private void refresh(final String tokenSchema) {
+        LOG.debug("Background refresh for schema '{}' started.", tokenSchema);
+        try {
+            this.refresher.accept(tokenSchema);
+
+        } catch (Exception e) {
+            LOG.error("Background refresh for schema '{}' failed: {}", tokenSchema, e.getMessage());
+        }
+    }
+
+    private long nextJitter() {
+        return this.jitter == 0 ? 0 : ThreadLocalRandom.current().nextLong(this.jitter);
+    }
+}
@@ -0,0 +1,53 @@
+package com.networknt.rule.generic.token;
+
+import com.networknt.rule.generic.token.schema.TokenState;
+
+/**
+ * Store consulted before a token schema is refreshed, so instances can share tokens instead of each requesting their own.
+ * A refresh takes a lease on the schema first, so only the lease holder calls the token service for an expiry window while
+ * the other instances wait for the token it publishes.
+ * Implementations must be thread safe, and need a public no-arg constructor to be configured by class name.
+ */
+public interface TokenStore {
+
+    /**
+     * @param tokenSchema - name of the token schema.
+     * @return - the last token published for the schema, or null if there is none.
+     */
+    TokenState get(String tokenSchema);
+
+    /**
+     * Publishes a new token for the schema.
+     *
+     * @param tokenSchema - name of the token schema.
+     * @param tokenState - the token and its expiration.
+     */
+    void put(String tokenSchema, TokenState tokenState);
+
+    /**
+     * Tries to become the only one refreshing the schema. A lease held by another owner is only granted once it expires.
+     *
+     * @param tokenSchema - name of the token schema.
+     * @param owner - id of the instance taking the lease.
+     * @param leaseMillis - time in milliseconds the lease is held for if it is not released.
+     * @return - true if the lease was granted to the owner.
+     */
+    boolean tryAcquireLease(String tokenSchema, String owner, long leaseMillis);
+
+    /**
+     * Releases a lease, if it is still held by the owner.
+     *
+     * @param tokenSchema - name of the token schema.
+     * @param owner - id of the instance that took the lease.
+     */
+    void releaseLease(String tokenSchema, String owner);
+
+    /**
+     * Forgets the token of a schema that was changed or removed by a config reload, so it is not handed to the new schema.
+     * Stores shared with other instances may keep it, since those instances can still run the previous config.
+     *
+     * @param tokenSchema - name of the token schema.
+     */
+    default void remove(String tokenSchema) {
+    }
+}
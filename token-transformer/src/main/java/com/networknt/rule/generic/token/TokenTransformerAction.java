@@ -7,12 +7,19 @@ import com.networknt.http.client.ssl.ClientX509ExtendedTrustManager;
 import com.networknt.http.client.ssl.TLSConfig;
 import com.networknt.rule.RequestTransformAction;
 import com.networknt.rule.RuleActionValue;
+import com.networknt.rule.generic.token.exception.TokenCircuitOpenException;
 import com.networknt.rule.generic.token.exception.TokenRequestException;
 import com.networknt.rule.generic.token.exception.TokenRequestInterruptedException;
+import com.networknt.rule.generic.token.exception.TokenRequestTimeoutException;
+import com.networknt.rule.generic.token.exception.TokenStoreLeaseTimeoutException;
+import com.networknt.rule.generic.token.metrics.TokenMetricsRegistry;
 import com.networknt.rule.generic.token.schema.RequestSchema;
 import com.networknt.rule.generic.token.schema.SharedVariableSchema;
+import com.networknt.rule.generic.token.schema.TokenPool;
 import com.networknt.rule.generic.token.schema.TokenSchema;
+import com.networknt.rule.generic.token.schema.TokenState;
 import com.networknt.rule.generic.token.schema.UpdateSchema;
+import com.networknt.rule.generic.token.schema.jwt.JWTSchema;
 import com.networknt.server.ModuleRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -22,10 +29,20 @@ import java.net.*;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.security.*;
 import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static com.networknt.utility.Constants.ERROR_MESSAGE;
 
@@ -39,40 +56,441 @@ import static com.networknt.utility.Constants.ERROR_MESSAGE;
 public class TokenTransformerAction implements RequestTransformAction {
 
     private static final Logger LOG = LoggerFactory.getLogger(TokenTransformerAction.class);
-    private static final TokenTransformerConfig CONFIG = TokenTransformerConfig.load();
+
+    /* replaced as a whole on reload, so a request reads either the previous or the next config, never a mix. */
+    private static volatile TokenTransformerConfig config = TokenTransformerConfig.load();
+
+    /* in-flight token refreshes keyed by the schema instance holding the token, so only one caller hits the token service per expiry.
+     * Per-key copies, pool members and schemas replaced by a reload each refresh on their own. */
+    private static final Map<TokenSchema, CompletableFuture<Boolean>> IN_FLIGHT_REFRESHES = new ConcurrentHashMap<>();
+
+    /* schemas with a stale token that already have a revalidation queued. */
+    private static final Set<TokenSchema> PENDING_REVALIDATIONS = ConcurrentHashMap.newKeySet();
+    private static final ExecutorService REVALIDATION_EXECUTOR = Executors.newCachedThreadPool(runnable -> {
+        final var thread = new Thread(runnable, "token-transformer-revalidate");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /* http clients shared by schemas with the same transport settings. */
+    private static final TokenHttpClientRegistry HTTP_CLIENTS = new TokenHttpClientRegistry(config.getHttpClientIdleTimeout());
+
+    /* owner of the default ssl context in the http client registry, for schemas without an ssl context schema. */
+    private static final Object DEFAULT_SSL_CONTEXT = new Object();
+
+    /* signature engines per thread, keyed by algorithm. */
+    private static final ThreadLocal<Map<String, Signature>> SIGNATURES = ThreadLocal.withInitial(HashMap::new);
+
+    /* pre-signed assertion pools keyed by jwt schema, only for schemas with an assertionPoolSize. */
+    private static final Map<JWTSchema, JwtAssertionPool> ASSERTION_POOLS = new ConcurrentHashMap<>();
+    private static final ExecutorService ASSERTION_EXECUTOR = Executors.newSingleThreadExecutor(runnable -> {
+        final var thread = new Thread(runnable, "token-transformer-assertions");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /* store consulted before refreshing, shared with other instances unless it is the in-memory default. */
+    private static final TokenStore TOKEN_STORE = createTokenStore();
+    private static final String INSTANCE_ID = UUID.randomUUID().toString();
+    private static final long TOKEN_STORE_POLL_INTERVAL = 100L;
+
+    /* per-schema counters and latencies. */
+    private static final TokenMetricsRegistry METRICS = new TokenMetricsRegistry();
+
+    /* per-key tokens of schemas with a cacheKey, keyed by tokenSchema name. Replaced when the schema is replaced by a reload. */
+    private static final Map<String, KeyedTokenCache> KEYED_CACHES = new ConcurrentHashMap<>();
+
+    /* circuit breakers keyed by schema instance, so every per-key and pool member copy has its own circuit. Only used when circuitBreaker is enabled.
+     * weak keys let the circuits of evicted copies go with them. */
+    private static final Map<TokenSchema, TokenCircuitBreaker> CIRCUIT_BREAKERS = Collections.synchronizedMap(new WeakHashMap<>());
+
+    /* only created when persistentCache is enabled and configured. */
+    private static volatile PersistentTokenCache persistentCache;
+
+    /* only created when proactiveRefresh is enabled. */
+    private static volatile TokenRefreshScheduler refreshScheduler;
+
+    /* only started when prefetch is enabled, readiness waits on it. */
+    private static volatile CompletableFuture<TokenPrefetchStatus> prefetchTask;
+    private static volatile TokenPrefetchStatus prefetchStatus = config.isPrefetch() ? TokenPrefetchStatus.RUNNING : TokenPrefetchStatus.DISABLED;
     private final TokenKeyStoreManager keyStoreManager = new TokenKeyStoreManager();
 
     public TokenTransformerAction() {
         LOG.trace("Constructing token-transformer plugin");
+        registerPlugin();
+
+        if (config.isPersistentCache())
+            loadPersistedTokens();
+
+        if (config.isProactiveRefresh())
+            this.startRefreshScheduler();
+
+        if (config.isPrefetch())
+            this.startPrefetch();
+    }
+
+    private static void registerPlugin() {
         ModuleRegistry.registerPlugin(
                 TokenTransformerAction.class.getPackage().getImplementationTitle(),
                 TokenTransformerAction.class.getPackage().getImplementationVersion(),
                 TokenTransformerConfig.CONFIG_NAME,
                 TokenTransformerAction.class.getName(),
                 Config.getNoneDecryptedInstance().getJsonMapConfigNoCache(TokenTransformerConfig.CONFIG_NAME),
-                CONFIG.getModuleMasks()
+                config.getModuleMasks()
         );
     }
 
+    /**
+     * Reloads token-transformer.yml without a restart.
+     * See {@link #reload(TokenTransformerConfig)} for what is kept between the two configs.
+     */
+    public static void reload() {
+        reload(TokenTransformerConfig.load());
+        registerPlugin();
+    }
+
+    /**
+     * Replaces the config, keeping the state of every schema that did not change.
+     * A schema read the same way from both configs keeps its instance, so its cached token, pool, per-key tokens, ssl context
+     * and http client survive the reload. Changed and added schemas start from their new config, and whatever was kept for a
+     * changed or removed schema by name is dropped. The new config is published in a single write once every schema is
+     * resolved, so requests see either the previous or the next set of schemas. Requests that already looked up a schema
+     * finish with it, but a token they requested for a replaced schema is not scheduled, persisted or shared under its name.
+     * Circuit breakers start over when the circuit breaker settings change.
+     * Settings read once at startup (tokenStore, persistentCache, proactiveRefresh and httpClientIdleTimeout) still need a restart.
+     *
+     * @param next - the new config.
+     */
+    static synchronized void reload(final TokenTransformerConfig next) {
+        final var previous = config;
+        final var previousSchemas = previous.getTokenSchemas() == null ? Map.<String, TokenSchema>of() : previous.getTokenSchemas();
+        final var dropped = new ArrayList<String>();
+        var kept = 0;
+
+        if (next.getTokenSchemas() != null) {
+
+            for (final var entry : next.getTokenSchemas().entrySet()) {
+                final var current = previousSchemas.get(entry.getKey());
+
+                if (current != null && Objects.equals(previous.getRawTokenSchema(entry.getKey()), next.getRawTokenSchema(entry.getKey()))) {
+                    entry.setValue(current);
+                    kept++;
+
+                } else if (current != null)
+                    dropped.add(entry.getKey());
+            }
+        }
+
+        for (final var tokenSchema : previousSchemas.keySet())
+            if (next.getTokenSchemas() == null || !next.getTokenSchemas().containsKey(tokenSchema))
+                dropped.add(tokenSchema);
+
+        config = next;
+
+        /* circuit breakers are created with the settings of the config, so they all start over when those settings change. */
+        if (previous.isCircuitBreaker() != next.isCircuitBreaker()
+                || previous.getCircuitBreakerThreshold() != next.getCircuitBreakerThreshold()
+                || previous.getCircuitBreakerBackoff() != next.getCircuitBreakerBackoff()
+                || previous.getCircuitBreakerMaxBackoff() != next.getCircuitBreakerMaxBackoff()
+                || previous.getCircuitBreakerJitter() != next.getCircuitBreakerJitter())
+            CIRCUIT_BREAKERS.clear();
+
+        for (final var tokenSchema : dropped) {
+            KEYED_CACHES.remove(tokenSchema);
+            CIRCUIT_BREAKERS.remove(previousSchemas.get(tokenSchema));
+            TOKEN_STORE.remove(storeKey(tokenSchema, previousSchemas.get(tokenSchema)));
+
+            if (refreshScheduler != null)
+                refreshScheduler.cancel(tokenSchema);
+        }
+
+        /* assertion pools are keyed by the jwt schema instance, so the pools of replaced schemas are never used again. */
+        final var jwtSchemas = Collections.newSetFromMap(new IdentityHashMap<JWTSchema, Boolean>());
+        if (next.getTokenSchemas() != null)
+            for (final var schema : next.getTokenSchemas().values())
+                if (schema.getTokenRequest() != null && schema.getTokenRequest().getJwtSchema() != null)
+                    jwtSchemas.add(schema.getTokenRequest().getJwtSchema());
+
+        ASSERTION_POOLS.entrySet().removeIf(entry -> {
+
+            if (jwtSchemas.contains(entry.getKey()))
+                return false;
+
+            entry.getValue().close();
+            return true;
+        });
+
+        LOG.info("Reloaded token-transformer config: {} schemas kept, {} changed or removed, {} total.",
+                kept, dropped.size(), next.getTokenSchemas() == null ? 0 : next.getTokenSchemas().size());
+        if (LOG.isDebugEnabled()) LOG.debug("Token schemas changed or removed by the reload: {}", dropped);
+    }
+
+    /**
+     * Creates the configured token store. Falls back to the in-memory store if the configured one cannot be created.
+     *
+     * @return - the token store.
+     */
+    private static TokenStore createTokenStore() {
+        final var tokenStore = config.getTokenStore();
+
+        if (tokenStore == null || tokenStore.equalsIgnoreCase(TokenTransformerConfig.TOKEN_STORE_MEMORY))
+            return new InMemoryTokenStore();
+
+        try {
+
+            if (tokenStore.equalsIgnoreCase(TokenTransformerConfig.TOKEN_STORE_FILE)) {
+
+                if (config.getTokenStoreDir() == null || config.getTokenStoreKey() == null)
+                    throw new IllegalArgumentException("tokenStoreDir and tokenStoreKey are required for the file token store.");
+
+                return new FileTokenStore(Path.of(config.getTokenStoreDir()), config.getTokenStoreKey());
+            }
+
+            return (TokenStore) Class.forName(tokenStore).getDeclaredConstructor().newInstance();
+
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            LOG.error("Could not create token store '{}', tokens will not be shared with other instances: {}", tokenStore, e.getMessage());
+            return new InMemoryTokenStore();
+        }
+    }
+
+    /**
+     * Opens the persistent token cache once per process, and loads every persisted token that is still valid,
+     * so schemas do not need a token request after a restart.
+     */
+    private static void loadPersistedTokens() {
+        synchronized (TokenTransformerAction.class) {
+
+            if (persistentCache != null)
+                return;
+
+            if (config.getPersistentCacheDir() == null || config.getPersistentCacheKey() == null) {
+                LOG.error("persistentCache is enabled but persistentCacheDir or persistentCacheKey is not set. Tokens will not be persisted.");
+                return;
+            }
+
+            try {
+                persistentCache = new PersistentTokenCache(Path.of(config.getPersistentCacheDir()), config.getPersistentCacheKey());
+
+            } catch (RuntimeException e) {
+                LOG.error("Could not open the persistent token cache, tokens will not be persisted: {}", e.getMessage());
+                return;
+            }
+        }
+
+        if (config.getTokenSchemas() != null)
+            for (final var entry : config.getTokenSchemas().entrySet())
+                persistentCache.load(storeKey(entry.getKey(), entry.getValue()), entry.getValue().getSharedVariables());
+    }
+
+    /**
+     * Starts the background refresh scheduler once per process, and schedules a refresh for every schema that already holds a valid token.
+     * Schemas without a token are scheduled after their first refresh.
+     */
+    private void startRefreshScheduler() {
+        synchronized (TokenTransformerAction.class) {
+
+            if (refreshScheduler != null)
+                return;
+
+            LOG.debug("Starting background token refresh scheduler.");
+            refreshScheduler = new TokenRefreshScheduler(config.getProactiveRefreshLeadTime(), config.getProactiveRefreshJitter(), this::backgroundRefresh);
+        }
+
+        if (config.getTokenSchemas() != null)
+            for (final var entry : config.getTokenSchemas().entrySet())
+                if (entry.getValue().getSharedVariables().getExpiration() > System.currentTimeMillis())
+                    refreshScheduler.scheduleRefresh(entry.getKey(), entry.getValue().getSharedVariables());
+    }
+
+    /**
+     * Starts the startup prefetch once per process. It runs in the background, {@link #isReady()} reports when it is done.
+     */
+    private void startPrefetch() {
+        synchronized (TokenTransformerAction.class) {
+
+            if (prefetchTask != null)
+                return;
+
+            LOG.info("Prefetching tokens for every token schema, waiting at most {}ms.", config.getPrefetchTimeout());
+            prefetchTask = this.prefetch(config.getTokenSchemas(), config.getPrefetchTimeout());
+        }
+
+        prefetchTask.thenAccept(status -> {
+            prefetchStatus = status;
+
+            if (status.getErrors().isEmpty() && !status.getResults().containsValue(TokenPrefetchStatus.Result.TIMED_OUT))
+                LOG.info("Token prefetch finished in {}ms: {}", status.getDuration(), status.getResults());
+
+            else LOG.error("Token prefetch finished in {}ms with problems: {} {}", status.getDuration(), status.getResults(), status.getErrors());
+        });
+    }
+
+    /**
+     * Validates and warms up every schema at the same time, and requests the token of every schema that does not have a valid one.
+     * Schemas still working when the timeout runs out are reported as timed out and carry on in the background.
+     *
+     * @param tokenSchemas - the schemas to prefetch, keyed by name.
+     * @param timeout - milliseconds to wait for the schemas.
+     * @return - future that completes with the outcome once every schema is done or the timeout ran out.
+     */
+    CompletableFuture<TokenPrefetchStatus> prefetch(final Map<String, TokenSchema> tokenSchemas, final long timeout) {
+        final var start = System.currentTimeMillis();
+        final var tasks = new LinkedHashMap<String, CompletableFuture<TokenPrefetchStatus.Result>>();
+
+        if (tokenSchemas != null)
+            for (final var entry : tokenSchemas.entrySet())
+                tasks.put(entry.getKey(), CompletableFuture.supplyAsync(() -> this.prefetchTokenSchema(entry.getKey(), entry.getValue()), REVALIDATION_EXECUTOR)
+                        .thenCompose(result -> result));
+
+        return CompletableFuture.allOf(tasks.values().toArray(new CompletableFuture[0]))
+                .completeOnTimeout(null, timeout, TimeUnit.MILLISECONDS)
+                .handle((ignored, e) -> {
+                    final var results = new TreeMap<String, TokenPrefetchStatus.Result>();
+                    final var errors = new TreeMap<String, String>();
+
+                    for (final var entry : tasks.entrySet()) {
+                        final var task = entry.getValue();
+
+                        if (!task.isDone())
+                            results.put(entry.getKey(), TokenPrefetchStatus.Result.TIMED_OUT);
+
+                        else if (task.isCompletedExceptionally()) {
+                            final var cause = task.exceptionNow();
+                            results.put(entry.getKey(), TokenPrefetchStatus.Result.FAILED);
+                            errors.put(entry.getKey(), (cause instanceof CompletionException && cause.getCause() != null ? cause.getCause() : cause).getMessage());
+
+                        } else results.put(entry.getKey(), task.join());
+                    }
+
+                    return new TokenPrefetchStatus(true, System.currentTimeMillis() - start, results, errors);
+                });
+    }
+
+    /**
+     * Validates a schema, builds its ssl context, http client and signing key, and requests its token (every member's for a pool).
+     * Runs on a worker thread, since loading keystores and ssl contexts blocks.
+     *
+     * @param tokenSchema - name of the token schema.
+     * @param schema - the token schema.
+     * @return - future that completes with the result of the schema.
+     */
+    private CompletableFuture<TokenPrefetchStatus.Result> prefetchTokenSchema(final String tokenSchema, final TokenSchema schema) {
+        schema.validate();
+
+        final var request = schema.getTokenRequest();
+        this.getTokenSchemaHttpClient(request);
+
+        if (request.getJwtSchema() != null) {
+            final var keyStore = request.getJwtSchema().getKeyStore();
+            this.keyStoreManager.getPrivateKey(keyStore.getName(), keyStore.getPassword(), keyStore.getAlias(), keyStore.getKeyPass());
+        }
+
+        /* the tokens of a schema with a cacheKey depend on the request. */
+        if (schema.getCacheKey() != null)
+            return CompletableFuture.completedFuture(TokenPrefetchStatus.Result.SKIPPED);
+
+        final var tokenPool = schema.getTokenPool();
+        final var members = new ArrayList<TokenSchema>();
+
+        if (tokenPool == null)
+            members.add(schema);
+
+        else for (int x = 0; x < tokenPool.size(); x++)
+            members.add(tokenPool.getMember(x));
+
+        final var refreshes = new ArrayList<CompletableFuture<Boolean>>();
+        for (final var member : members)
+            refreshes.add(this.refreshTokenAsync(tokenSchema, member, false).thenApply(valid -> {
+
+                if (!valid)
+                    throw new IllegalStateException("The token request did not return a token.");
+
+                /* resolve the update templates once, so the first request gets them from cache. */
+                member.getTokenUpdate().getResolvedHeaders(member.getSharedVariables());
+                member.getTokenUpdate().getResolvedBody(member.getSharedVariables());
+                return true;
+            }));
+
+        return CompletableFuture.allOf(refreshes.toArray(new CompletableFuture[0])).thenApply(ignored -> TokenPrefetchStatus.Result.READY);
+    }
+
+    /**
+     * @return - true once the startup prefetch is done, or right away if prefetch is not enabled. Meant for readiness probes.
+     */
+    public static boolean isReady() {
+        return prefetchStatus.isComplete();
+    }
+
+    /**
+     * @return - the outcome of the startup prefetch, not complete while it is running.
+     */
+    public static TokenPrefetchStatus getPrefetchStatus() {
+        return prefetchStatus;
+    }
+
+    /**
+     * Refreshes a schema from the background scheduler, ahead of its expiration.
+     * Failed refreshes are retried while the cached token is still valid.
+     *
+     * @param tokenSchema - name of the token schema.
+     */
+    private void backgroundRefresh(final String tokenSchema) {
+        final var schema = this.getTokenSchema(tokenSchema);
+
+        if (schema == null)
+            return;
+
+        try {
+
+            if (!this.refreshToken(tokenSchema, schema, true))
+                refreshScheduler.scheduleRetry(tokenSchema, schema.getSharedVariables());
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+
+        } catch (RuntimeException e) {
+            refreshScheduler.scheduleRetry(tokenSchema, schema.getSharedVariables());
+            throw e;
+        }
+    }
+
     @Override
     public void performAction(String ruleId, String actionId, final Map<String, Object> objMap, final Map<String, Object> resultMap, final Collection<RuleActionValue> actionValues) {
 
         LOG.trace("TokenTransformer plugin starts with ruleId: {} actionId: {}.", ruleId, actionId);
 
+        /* start every schema first so independent refreshes run at the same time, then merge in the configured order. */
+        final var tokenSchemas = new ArrayList<String>();
+        final var acquisitions = new ArrayList<CompletableFuture<TokenSchema>>();
+
         for (final var actionValue : actionValues) {
 
             if (actionValue.getActionValueId().equals(TokenTransformerConfig.TOKEN_SCHEMA)) {
+                tokenSchemas.add(actionValue.getValue());
+                acquisitions.add(this.acquireTokenSchema(actionValue.getValue(), objMap));
+            }
+        }
 
-                try {
-                    this.handleTokenAction(actionValue.getValue(), resultMap);
+        for (int x = 0; x < acquisitions.size(); x++) {
+
+            try {
+                final var schema = await(acquisitions.get(x));
+
+                /* write new values to 'update' section of the tokenSchema */
+                if (schema != null)
+                    updateResultMapFromSchema(schema.getTokenUpdate(), schema.getSharedVariables(), resultMap);
+
+            } catch (Exception e) {
+                LOG.error("Exception occurred while sending a new token request for schema '{}'", tokenSchemas.get(x));
+                LOG.trace("TokenTransformer plugin ends with error.", e);
 
-                } catch (Exception e) {
-                    LOG.error("Exception occurred while sending a new token request for schema '{}'", actionValue.getValue());
-                    LOG.trace("TokenTransformer plugin ends with error.", e);
+                /* an open circuit rejects the request without waiting, so the worker thread is not flagged as interrupted. */
+                if (!(e instanceof TokenCircuitOpenException))
                     Thread.currentThread().interrupt();
-                    resultMap.put(ERROR_MESSAGE, e.getMessage());
-                    return;
-                }
+
+                resultMap.put(ERROR_MESSAGE, e.getMessage());
+                return;
             }
         }
         LOG.trace("TokenTransformer plugin ends.");
@@ -80,55 +498,595 @@ public class TokenTransformerAction implements RequestTransformAction {
 
     /**
      * When an in-flight request/response has a matching tokenSchema, handle the token action for the in-flight request/response.
+     * Blocks until the token is available, see {@link #handleTokenActionAsync(String, Map)} for the non-blocking version.
+     *
      * @param tokenSchema - defined schema for in-flight request/response.
      * @param resultMap - outbound map that stores the action result.
      *
      * @throws InterruptedException - Occurs when sending the request to the token service fails.
      */
     public void handleTokenAction(final String tokenSchema, final Map<String, Object> resultMap) throws InterruptedException {
+        await(this.handleTokenActionAsync(tokenSchema, resultMap));
+    }
+
+    /**
+     * Non-blocking version of {@link #handleTokenAction(String, Map)}.
+     * The returned future completes once the resultMap is updated, so the caller can park on it instead of holding a thread
+     * for the token round trip. The resultMap may be updated on a http client thread and should not be read before then.
+     * All callers waiting on an expired token share the same future for the schema.
+     *
+     * @param tokenSchema - defined schema for in-flight request/response.
+     * @param resultMap - outbound map that stores the action result.
+     * @return - future that completes when the action is done.
+     */
+    public CompletableFuture<Void> handleTokenActionAsync(final String tokenSchema, final Map<String, Object> resultMap) {
+        return this.handleTokenActionAsync(tokenSchema, Collections.emptyMap(), resultMap);
+    }
+
+    /**
+     * Version of {@link #handleTokenActionAsync(String, Map)} for schemas with a cacheKey, which is read from the objMap.
+     *
+     * @param tokenSchema - defined schema for in-flight request/response.
+     * @param objMap - rule engine object map of the in-flight request.
+     * @param resultMap - outbound map that stores the action result.
+     * @return - future that completes when the action is done.
+     */
+    public CompletableFuture<Void> handleTokenActionAsync(final String tokenSchema, final Map<String, Object> objMap, final Map<String, Object> resultMap) {
+        return this.acquireTokenSchema(tokenSchema, objMap).thenAccept(schema -> {
+
+            /* write new values to 'update' section of the tokenSchema */
+            if (schema != null)
+                updateResultMapFromSchema(schema.getTokenUpdate(), schema.getSharedVariables(), resultMap);
+        });
+    }
+
+    /**
+     * Looks up a schema by name and makes sure it holds a usable token.
+     * For a schema with a cacheKey, the schema holding the token of the key found in the request is used.
+     * For a schema with a pool, the next member of the pool is used.
+     *
+     * @param tokenSchema - defined schema for in-flight request/response.
+     * @param objMap - rule engine object map of the in-flight request.
+     * @return - future that completes with the schema once its token can be used, or with null if there is nothing to update.
+     */
+    private CompletableFuture<TokenSchema> acquireTokenSchema(final String tokenSchema, final Map<String, Object> objMap) {
+
+        final var tokenSchemas = config.getTokenSchemas();
+
+        if (tokenSchemas == null)
+            return CompletableFuture.completedFuture(null);
+
+        final var configured = tokenSchemas.get(tokenSchema);
+
+        if (configured == null)
+            return CompletableFuture.failedFuture(new IllegalArgumentException("Provided token schema '" + tokenSchema + "' does not exist!"));
+
+        final TokenSchema keyed;
+        if (configured.getCacheKey() != null) {
+            final var key = configured.getCacheKey().resolve(objMap);
+
+            if (key == null)
+                return CompletableFuture.failedFuture(new IllegalArgumentException("The request has no cache key for token schema '" + tokenSchema + "'."));
+
+            try {
+                keyed = getKeyedCache(tokenSchema, configured).get(key);
+
+            } catch (RuntimeException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+
+        } else keyed = configured;
+
+        final var tokenPool = keyed.getTokenPool();
+        final var schema = tokenPool == null ? keyed : this.selectPoolMember(tokenSchema, tokenPool);
+        return this.acquireToken(tokenSchema, schema).thenApply(valid -> valid ? schema : null);
+    }
+
+    /**
+     * Picks the pool member to hand out. A member without a usable token is refreshed in the background while a member
+     * that has one is handed out instead, so callers only wait on the token service when no member holds a usable token.
+     *
+     * @param tokenSchema - name of the token schema.
+     * @param tokenPool - the pool of the schema.
+     * @return - the member to hand out.
+     */
+    private TokenSchema selectPoolMember(final String tokenSchema, final TokenPool tokenPool) {
+        final var member = tokenPool.next();
+
+        if (!this.isExpired(member))
+            return member;
+
+        final var usable = tokenPool.next(candidate -> !this.isExpired(candidate));
+
+        if (usable == null)
+            return member;
+
+        this.revalidateToken(tokenSchema, member);
+        return usable;
+    }
 
-        if (CONFIG.getTokenSchemas() == null)
+    /**
+     * @param tokenSchema - name of the token schema.
+     * @param configured - the configured schema with a cacheKey.
+     * @return - the per-key cache of the configured schema.
+     */
+    private static KeyedTokenCache getKeyedCache(final String tokenSchema, final TokenSchema configured) {
+        final var keyedCache = KEYED_CACHES.get(tokenSchema);
+
+        if (keyedCache != null && keyedCache.getSchema() == configured)
+            return keyedCache;
+
+        return KEYED_CACHES.compute(tokenSchema, (name, existing) -> existing != null && existing.getSchema() == configured
+                ? existing
+                : new KeyedTokenCache(configured));
+    }
+
+    /**
+     * Makes sure the schema holds a token that can be used, requesting a new one if needed.
+     *
+     * @param tokenSchema - name of the token schema.
+     * @param schema - the token schema.
+     * @return - future that completes with true once the shared variables hold a usable token.
+     */
+    private CompletableFuture<Boolean> acquireToken(final String tokenSchema, final TokenSchema schema) {
+
+        final var metrics = METRICS.forSchema(tokenSchema);
+
+        if (this.isExpired(schema)) {
+
+            if (this.isServableStale(schema)) {
+
+                LOG.debug("Cached token is past its grace period but still valid. Serving it while a new token is requested.");
+                metrics.recordStaleHit();
+                this.revalidateToken(tokenSchema, schema);
+                return CompletableFuture.completedFuture(true);
+            }
+
+            LOG.debug("Cached token is expired. Requesting a new token.");
+            metrics.recordMiss();
+            return this.refreshTokenAsync(tokenSchema, schema, false);
+        }
+
+        LOG.debug("Cached token is not expired. Updating result map from cached token data.");
+        metrics.recordHit();
+        return CompletableFuture.completedFuture(true);
+    }
+
+    /**
+     * Looks up a configured token schema by name.
+     *
+     * @param tokenSchema - name of the token schema.
+     * @return - the token schema, or null if it is not configured.
+     */
+    TokenSchema getTokenSchema(final String tokenSchema) {
+        final var tokenSchemas = config.getTokenSchemas();
+        return tokenSchemas == null ? null : tokenSchemas.get(tokenSchema);
+    }
+
+    /**
+     * Queues an asynchronous refresh for a schema serving a stale token. Only one revalidation is queued per schema,
+     * and it still goes through the single-flight refresh, so callers in the stale window never wait on the token service.
+     *
+     * @param tokenSchema - name of the token schema.
+     * @param schema - the token schema.
+     */
+    private void revalidateToken(final String tokenSchema, final TokenSchema schema) {
+        if (!PENDING_REVALIDATIONS.add(schema))
             return;
 
-        final var schema = CONFIG.getTokenSchemas().get(tokenSchema);
+        REVALIDATION_EXECUTOR.execute(() -> {
+            try {
+                this.refreshToken(tokenSchema, schema, false);
+
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+
+            } catch (Exception e) {
+                LOG.error("Revalidating the stale token for schema '{}' failed: {}", tokenSchema, e.getMessage());
+
+            } finally {
+                PENDING_REVALIDATIONS.remove(schema);
+            }
+        });
+    }
+
+    /**
+     * Refreshes the token for the given schema and waits for the result.
+     *
+     * @param tokenSchema - name of the token schema being refreshed.
+     * @param schema - the token schema.
+     * @param force - true to refresh even if the cached token is not expired yet.
+     * @return - true if the shared variables hold a valid token after the refresh.
+     *
+     * @throws InterruptedException - if the thread is interrupted while waiting on the token request.
+     */
+    private boolean refreshToken(final String tokenSchema, final TokenSchema schema, final boolean force) throws InterruptedException {
+        return await(this.refreshTokenAsync(tokenSchema, schema, force));
+    }
+
+    /**
+     * Refreshes the token for the given schema, making sure only one caller talks to the token service at a time.
+     * The first caller claims the refresh and sends the token request, concurrent callers for the same schema get the
+     * same future instead of sending their own request.
+     *
+     * @param tokenSchema - name of the token schema being refreshed.
+     * @param schema - the token schema.
+     * @param force - true to refresh even if the cached token is not expired yet.
+     * @return - future that completes with true if the shared variables hold a valid token after the refresh.
+     */
+    private CompletableFuture<Boolean> refreshTokenAsync(final String tokenSchema, final TokenSchema schema, final boolean force) {
+        final var refresh = new CompletableFuture<Boolean>();
+        final var inFlightRefresh = IN_FLIGHT_REFRESHES.putIfAbsent(schema, refresh);
+
+        if (inFlightRefresh != null) {
+            LOG.debug("Token refresh for schema '{}' is already in flight. Sharing the result.", tokenSchema);
+            return inFlightRefresh;
+        }
+
+        final CompletableFuture<Boolean> request;
+        final boolean requested;
+        final var sent = new AtomicBoolean(false);
+        final var circuitBreaker = getCircuitBreaker(tokenSchema, schema);
+        final var metrics = METRICS.forSchema(tokenSchema);
+
+        /* another caller may have finished a refresh between our expiry check and claiming this one. */
+        if (!force && !this.isExpired(schema)) {
+            request = CompletableFuture.completedFuture(true);
+            requested = false;
+
+        } else if (circuitBreaker != null && !circuitBreaker.allowRequest()) {
+            IN_FLIGHT_REFRESHES.remove(schema, refresh);
+            metrics.recordCircuitRejection();
+            final var retryIn = Math.max(0, circuitBreaker.getOpenUntil() - System.currentTimeMillis());
+
+            /* serve the last token while it is valid, background refreshes report a failure so they are retried later. */
+            if (schema.getSharedVariables().getExpiration() > System.currentTimeMillis()) {
+                LOG.debug("Circuit for schema '{}' is open. Serving the last token for another {}ms.", tokenSchema, retryIn);
+                refresh.complete(!force);
+
+            } else refresh.completeExceptionally(new TokenCircuitOpenException(tokenSchema, retryIn));
+
+            return refresh;
+
+        } else {
+            requested = true;
+
+            try {
+                /* per-key and pool member tokens are not shared through the token store, it only holds one token per schema. */
+                if (schema.isCopy()) {
+                    sent.set(true);
+                    request = this.requestNewTokenAsync(tokenSchema, schema);
+
+                } else request = this.requestSharedTokenAsync(tokenSchema, schema, sent);
+
+            } catch (Throwable e) {
+                IN_FLIGHT_REFRESHES.remove(schema, refresh);
+
+                if (circuitBreaker != null && sent.get())
+                    circuitBreaker.recordFailure();
+
+                else if (circuitBreaker != null)
+                    circuitBreaker.releaseTrial();
+
+                if (sent.get())
+                    metrics.recordFailure();
+                refresh.completeExceptionally(e);
+                return refresh;
+            }
+        }
+
+        request.whenComplete((refreshed, e) -> {
+            IN_FLIGHT_REFRESHES.remove(schema, refresh);
+
+            /* only a token request sent by this instance tells anything about the token service. A token shared by another
+             * instance, or giving up on the lease another instance holds, leaves the counters and the circuit as they are. */
+            if (sent.get()) {
+
+                if (e == null && refreshed)
+                    metrics.recordRefresh();
+
+                else metrics.recordFailure();
+            }
+
+            if (requested && circuitBreaker != null) {
+
+                if (!sent.get())
+                    circuitBreaker.releaseTrial();
+
+                else if (e == null && refreshed)
+                    circuitBreaker.recordSuccess();
+
+                else circuitBreaker.recordFailure();
+            }
+
+            if (e != null) {
+                refresh.completeExceptionally(e instanceof CompletionException && e.getCause() != null ? e.getCause() : e);
+                return;
+            }
+
+            /* per-key and pool member tokens are refreshed on demand only, so evicted keys are not kept alive in the background.
+             * a schema replaced by a reload while its token was requested does not schedule or persist anything under its name either. */
+            final var owned = !schema.isCopy() && isCurrent(tokenSchema, schema);
 
-        if (schema != null) {
+            if (refreshed && owned && refreshScheduler != null)
+                refreshScheduler.scheduleRefresh(tokenSchema, schema.getSharedVariables());
 
-            if (this.isExpired(schema)) {
+            if (refreshed && requested && owned && persistentCache != null)
+                persistentCache.saveAsync(storeKey(tokenSchema, schema), schema.getSharedVariables());
 
-                LOG.debug("Cached token is expired. Requesting a new token.");
+            refresh.complete(refreshed);
+        });
 
-                if (schema.getTokenRequest().getJwtSchema() != null) {
-                    final var constructedJwt = this.buildJwtToken(schema.getTokenRequest());
-                    if(LOG.isTraceEnabled()) LOG.trace("Generated jwt = {}", constructedJwt);
-                    schema.getSharedVariables().setConstructedJwt(constructedJwt);
+        return refresh;
+    }
+
+    /**
+     * Gets a new token through the token store. A newer token published by another instance is used as is, otherwise the
+     * token service is only called by the instance holding the refresh lease, while the others wait for it to publish.
+     * A lease that is never released runs out after tokenStoreLease, so a failed instance cannot block the others.
+     * Tokens and leases are stored under the schema name and the fingerprint of its definition, so a schema changed by a reload
+     * never adopts a token requested with its previous definition.
+     *
+     * @param tokenSchema - name of the token schema.
+     * @param schema - the token schema.
+     * @param sent - set once this instance sends the token request.
+     * @return - future that completes with true if the shared variables hold a valid token.
+     */
+    private CompletableFuture<Boolean> requestSharedTokenAsync(final String tokenSchema, final TokenSchema schema, final AtomicBoolean sent) {
+        final var timeout = schema.getTokenRequest().getTimeout();
+        final var maxWait = timeout > 0 ? Math.min(timeout, config.getTokenStoreLease()) : config.getTokenStoreLease();
+        return this.requestSharedTokenAsync(tokenSchema, schema, storeKey(tokenSchema, schema), System.currentTimeMillis() + maxWait, sent);
+    }
+
+    /**
+     * Waits for the lease holder at most until the deadline, the token request timeout or tokenStoreLease, whichever is shorter.
+     * After that the last token is served while it has not expired, otherwise the refresh fails.
+     *
+     * @param tokenSchema - name of the token schema.
+     * @param schema - the token schema.
+     * @param storeKey - key of the schema in the token store.
+     * @param deadline - time in milliseconds to stop waiting for another instance at.
+     * @param sent - set once this instance sends the token request.
+     * @return - future that completes with true if the shared variables hold a valid token.
+     */
+    private CompletableFuture<Boolean> requestSharedTokenAsync(final String tokenSchema, final TokenSchema schema, final String storeKey, final long deadline, final AtomicBoolean sent) {
+
+        if (this.adoptStoredToken(tokenSchema, schema, storeKey))
+            return CompletableFuture.completedFuture(true);
+
+        if (!TOKEN_STORE.tryAcquireLease(storeKey, INSTANCE_ID, config.getTokenStoreLease())) {
+            final var now = System.currentTimeMillis();
+
+            if (now >= deadline) {
+
+                if (schema.getSharedVariables().getExpiration() > now) {
+                    LOG.debug("Gave up waiting on another instance for the token of schema '{}'. Serving the last token.", tokenSchema);
+                    return CompletableFuture.completedFuture(true);
                 }
 
-                final var client = this.getTokenSchemaHttpClient(schema.getTokenRequest());
-                final var request = this.getTokenSchemaHttpRequest(schema.getTokenRequest(), schema.getSharedVariables());
-                final var response = this.sendRequest(client, request);
+                return CompletableFuture.failedFuture(new TokenStoreLeaseTimeoutException(tokenSchema));
+            }
 
-                if (response.statusCode() >= 200 && response.statusCode() <= 299) {
+            LOG.debug("Another instance is refreshing the token for schema '{}'. Waiting for it to be shared.", tokenSchema);
+            return CompletableFuture.supplyAsync(() -> null, CompletableFuture.delayedExecutor(Math.min(TOKEN_STORE_POLL_INTERVAL, deadline - now), TimeUnit.MILLISECONDS, REVALIDATION_EXECUTOR))
+                    .thenCompose(ignored -> this.requestSharedTokenAsync(tokenSchema, schema, storeKey, deadline, sent));
+        }
 
-                    /* update sharedVariables from http response */
-                    schema.getTokenSource().writeResponseToSharedVariables(schema.getSharedVariables(), response);
+        final CompletableFuture<Boolean> request;
+        try {
+            sent.set(true);
+            request = this.requestNewTokenAsync(tokenSchema, schema);
 
-                    if (schema.getTokenUpdate().isUpdateExpirationFromTtl())
-                        schema.getSharedVariables().updateExpiration();
+        } catch (RuntimeException e) {
+            TOKEN_STORE.releaseLease(storeKey, INSTANCE_ID);
+            throw e;
+        }
 
-                    /* write new values to 'update' section of the tokenSchema */
-                    updateResultMapFromSchema(schema.getTokenUpdate(), schema.getSharedVariables(), resultMap);
+        return request.whenComplete((refreshed, e) -> {
+            try {
 
-                } else LOG.error("The token request returned statusCode: '{}'", response.statusCode());
+                /* a schema replaced by a reload while its token was requested does not publish it, see reload(). */
+                if (e == null && refreshed && isCurrent(tokenSchema, schema))
+                    TOKEN_STORE.put(storeKey, schema.getSharedVariables().getTokenState());
 
-            } else {
+            } catch (RuntimeException storeException) {
+                LOG.error("Could not share the token for schema '{}': {}", tokenSchema, storeException.getMessage());
 
-                LOG.debug("Cached token is not expired. Updating result map from cached token data.");
-                updateResultMapFromSchema(schema.getTokenUpdate(), schema.getSharedVariables(), resultMap);
+            } finally {
+                TOKEN_STORE.releaseLease(storeKey, INSTANCE_ID);
             }
+        });
+    }
+
+    /**
+     * @param tokenSchema - name of the token schema.
+     * @param schema - the token schema.
+     * @return - true if the schema is still the one configured under the name, false once a reload replaced or removed it.
+     */
+    static boolean isCurrent(final String tokenSchema, final TokenSchema schema) {
+        final var tokenSchemas = config.getTokenSchemas();
+        return tokenSchemas != null && tokenSchemas.get(tokenSchema) == schema;
+    }
+
+    /**
+     * @return - the token store tokens are shared through.
+     */
+    static TokenStore getTokenStore() {
+        return TOKEN_STORE;
+    }
+
+    /**
+     * @param tokenSchema - name of the token schema.
+     * @param schema - the token schema.
+     * @return - the key of the schema in the token store and the persistent cache, made of its name and the fingerprint of its definition.
+     */
+    static String storeKey(final String tokenSchema, final TokenSchema schema) {
+        return schema.getFingerprint() == null ? tokenSchema : tokenSchema + "@" + schema.getFingerprint();
+    }
+
+    /**
+     * Uses the token from the token store if it is a different token than the one we hold, valid, and expires later.
+     *
+     * @param tokenSchema - name of the token schema.
+     * @param schema - the token schema.
+     * @param storeKey - key of the schema in the token store.
+     * @return - true if the stored token was used.
+     */
+    private boolean adoptStoredToken(final String tokenSchema, final TokenSchema schema, final String storeKey) {
+        final TokenState stored;
+        try {
+            stored = TOKEN_STORE.get(storeKey);
+
+        } catch (RuntimeException e) {
+            LOG.error("Could not read the shared token for schema '{}': {}", tokenSchema, e.getMessage());
+            return false;
+        }
+
+        final var sharedVariables = schema.getSharedVariables();
+
+        /* the token we already hold is never revived, it may have been expired on purpose. */
+        if (stored == null
+                || stored.getAccessToken() == null
+                || stored.getAccessToken().equals(sharedVariables.getAccessToken())
+                || stored.getExpiration() <= sharedVariables.getExpiration()
+                || isExpired(sharedVariables, stored.getExpiration()))
+            return false;
+
+        LOG.debug("Using the token shared by another instance for schema '{}'.", tokenSchema);
+        final var staged = sharedVariables.copy();
+        staged.setAccessToken(stored.getAccessToken());
+        staged.setExpiration(stored.getExpiration());
+        sharedVariables.publish(staged);
+        return true;
+    }
+
+    /**
+     * @param tokenSchema - name of the token schema.
+     * @param schema - the token schema, or one of its per-key or pool member copies.
+     * @return - the circuit breaker of the schema instance, or null if circuitBreaker is not enabled.
+     */
+    static TokenCircuitBreaker getCircuitBreaker(final String tokenSchema, final TokenSchema schema) {
+
+        final var current = config;
+
+        if (!current.isCircuitBreaker())
+            return null;
+
+        return CIRCUIT_BREAKERS.computeIfAbsent(schema, instance -> new TokenCircuitBreaker(
+                circuitName(tokenSchema, instance),
+                current.getCircuitBreakerThreshold(),
+                current.getCircuitBreakerBackoff(),
+                current.getCircuitBreakerMaxBackoff(),
+                current.getCircuitBreakerJitter()
+        ));
+    }
+
+    /**
+     * @param tokenSchema - name of the token schema.
+     * @param schema - the token schema, or one of its per-key or pool member copies.
+     * @return - the name of the circuit, with the cache key in brackets and the pool member after a '#' for copies.
+     */
+    private static String circuitName(final String tokenSchema, final TokenSchema schema) {
+        final var name = new StringBuilder(tokenSchema);
 
-        } else throw new IllegalArgumentException("Provided token schema '" + tokenSchema + "' does not exist!");
+        if (schema.getCacheKeyValue() != null)
+            name.append('[').append(schema.getCacheKeyValue()).append(']');
 
+        if (schema.getPoolMember() >= 0)
+            name.append('#').append(schema.getPoolMember());
+
+        return name.toString();
+    }
+
+    /**
+     * @return - a snapshot of every circuit breaker that saw a token request, keyed by tokenSchema name.
+     * Per-key circuits add the cache key in brackets, pool member circuits add '#' and the member index.
+     */
+    public static Map<String, TokenCircuitBreaker.Stats> getCircuitBreakerStats() {
+        final var stats = new TreeMap<String, TokenCircuitBreaker.Stats>();
+
+        synchronized (CIRCUIT_BREAKERS) {
+            for (final var circuitBreaker : CIRCUIT_BREAKERS.values())
+                stats.put(circuitBreaker.getTokenSchema(), circuitBreaker.getStats());
+        }
+
+        return stats;
+    }
+
+    /**
+     * Waits on a token future. Failures are rethrown as is.
+     *
+     * @param future - the token future.
+     * @return - the result of the future.
+     * @param <T> - result type.
+     *
+     * @throws InterruptedException - if the thread is interrupted while waiting.
+     */
+    private static <T> T await(final CompletableFuture<T> future) throws InterruptedException {
+        try {
+            return future.get();
+
+        } catch (ExecutionException e) {
+
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+
+            else if (e.getCause() instanceof InterruptedException)
+                throw new InterruptedException(e.getCause().getMessage());
+
+            else throw new IllegalStateException("Token refresh failed.", e.getCause());
+        }
+    }
+
+    /**
+     * Requests a new token from the token service and writes the response to the shared variables of the schema.
+     * The jwt and request are built on the calling thread, the response is handled on a http client thread.
+     *
+     * @param tokenSchema - name of the token schema.
+     * @param schema - the token schema.
+     * @return - future that completes with true if the token service responded with a 2xx status.
+     */
+    private CompletableFuture<Boolean> requestNewTokenAsync(final String tokenSchema, final TokenSchema schema) {
+        final var metrics = METRICS.forSchema(tokenSchema);
+
+        /* work on a private copy so request threads keep reading the current token until the new one is complete. */
+        final var sharedVariables = schema.getSharedVariables().copy();
+
+        if (schema.getTokenRequest().getJwtSchema() != null) {
+            final var jwtStart = System.nanoTime();
+            final var constructedJwt = this.getJwtAssertion(schema.getTokenRequest());
+            metrics.getJwtBuild().recordSince(jwtStart);
+            if(LOG.isTraceEnabled()) LOG.trace("Generated jwt = {}", constructedJwt);
+            sharedVariables.setConstructedJwt(constructedJwt);
+        }
+
+        final var client = this.getTokenSchemaHttpClient(schema.getTokenRequest());
+
+        /* the request schema is shared by every copy of the schema, so a request resolved from the variables of a copy is not cached. */
+        final var request = !schema.isCopy()
+                ? this.getTokenSchemaHttpRequest(schema.getTokenRequest(), sharedVariables)
+                : this.buildTokenSchemaHttpRequest(schema.getTokenRequest(), sharedVariables);
+
+        final var sendStart = System.nanoTime();
+        return this.sendRequestAsync(client, request).whenComplete((response, e) -> metrics.getHttpSend().recordSince(sendStart)).thenApply(response -> {
+
+            if (response.statusCode() >= 200 && response.statusCode() <= 299) {
+
+                /* update sharedVariables from http response */
+                final var parseStart = System.nanoTime();
+                schema.getTokenSource().writeResponseToSharedVariables(sharedVariables, response);
+                metrics.getResponseParse().recordSince(parseStart);
+
+                if (schema.getTokenUpdate().isUpdateExpirationFromTtl())
+                    sharedVariables.updateExpiration();
+
+                schema.getSharedVariables().publish(sharedVariables);
+                return true;
+
+            } else LOG.error("The token request returned statusCode: '{}'", response.statusCode());
+
+            return false;
+        });
     }
 
     /**
@@ -150,6 +1108,11 @@ public class TokenTransformerAction implements RequestTransformAction {
 
             return response;
 
+        } catch (HttpTimeoutException e) {
+            LOG.error("Exception:", e);
+            LOG.trace("URI = {}, Headers = {}, Method = {} ", request.uri(), request.headers(), request.method());
+            throw new TokenRequestTimeoutException(request);
+
         } catch (IOException e) {
             LOG.error("Exception:", e);
             LOG.trace("URI = {}, Headers = {}, Method = {} ", request.uri(), request.headers(), request.method());
@@ -164,6 +1127,35 @@ public class TokenTransformerAction implements RequestTransformAction {
         }
     }
 
+    /**
+     * Sends the token request without blocking the calling thread.
+     *
+     * @param client - created client for the schema.
+     * @param request - created request for the schema.
+     * @return - future that completes with the response from the token service.
+     */
+    public CompletableFuture<HttpResponse<String>> sendRequestAsync(final HttpClient client, final HttpRequest request) {
+        return client.sendAsync(request, HttpResponse.BodyHandlers.ofString()).handle((response, e) -> {
+
+            if (e == null) {
+
+                if (LOG.isTraceEnabled())
+                    LOG.trace("Status = {}, ResponseBody = {}", response.statusCode(), response.body());
+
+                return response;
+            }
+
+            final var cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+            LOG.error("Exception:", cause);
+            LOG.trace("URI = {}, Headers = {}, Method = {} ", request.uri(), request.headers(), request.method());
+
+            if (cause instanceof HttpTimeoutException)
+                throw new TokenRequestTimeoutException(request);
+
+            throw new TokenRequestException(request);
+        });
+    }
+
     /**
      * Gets the http request used in the token service call.
      * It's either created or retrieved from cache.
@@ -177,60 +1169,105 @@ public class TokenTransformerAction implements RequestTransformAction {
         if (this.shouldBuildHttpRequest(schema)) {
 
             /* build our request, and cache it for later. */
-            final var httpRequestBuilder = new HttpTokenRequestBuilder(schema.getUrl())
-                    .withHeaders(schema.getResolvedHeaders(sharedVariableSchema))
-                    .withBody(schema.getResolvedBody(sharedVariableSchema), schema.getType());
-
-            schema.setHttpRequest(httpRequestBuilder.build());
+            schema.setHttpRequest(this.buildTokenSchemaHttpRequest(schema, sharedVariableSchema));
         }
 
         return schema.getHttpRequest();
     }
 
     /**
-     * Gets the Http client for the token request. Either retrieved from cache or a creates a new client.
+     * Builds the http request used in the token service call without caching it.
+     *
+     * @param schema - token schema for in-flight request/response.
+     * @param sharedVariableSchema - variables the headers and body are resolved from.
+     * @return - HttpRequest for the token service.
+     */
+    private HttpRequest buildTokenSchemaHttpRequest(final RequestSchema schema, final SharedVariableSchema sharedVariableSchema) {
+        return new HttpTokenRequestBuilder(schema.getUrl())
+                .withHeaders(schema.getResolvedHeaders(sharedVariableSchema))
+                .withBody(schema.getResolvedBody(sharedVariableSchema), schema.getType())
+                .withTimeout(schema.getTimeout())
+                .build();
+    }
+
+    /**
+     * Gets the Http client for the token request from the shared client registry.
+     * Schemas with the same ssl context schema, proxy and http version get the same client. Schemas without an ssl context schema
+     * share the client built on the default context. The ssl context is only built when a client is created,
+     * or when a keystore reload replaces the client of an ssl context schema.
      *
      * @param schema - the token schema
      * @return - returns HttpClient for the request.
      */
     private HttpClient getTokenSchemaHttpClient(final RequestSchema schema) {
 
-        if (this.shouldCreateHttpClient(schema)) {
-
-            /* Use SSL configuration if we have one, otherwise create a default context */
-            final var sslContext = this.createSSLContext(schema);
-            final var clientBuilder = HttpClient.newBuilder()
-                    .followRedirects(HttpClient.Redirect.NORMAL)
-                    .connectTimeout(Duration.ofMillis(ClientConfig.get().getTimeout()))
-                    .sslContext(sslContext);
-
-            if (CONFIG.getProxyHost() != null)
-                clientBuilder.proxy(ProxySelector.of(new InetSocketAddress(
-                        CONFIG.getProxyHost(),
-                        CONFIG.getProxyPort() == 0 ? 443 : CONFIG.getProxyPort())
-                ));
-
-            if (CONFIG.isEnableHttp2())
-                clientBuilder.version(HttpClient.Version.HTTP_2);
-
-            else clientBuilder.version(HttpClient.Version.HTTP_1_1);
+        if (ClientConfig.get().getMappedConfig().get(ClientConfig.TLS) instanceof Map) {
 
+            // this a workaround to bypass the hostname verification in jdk11 http client.
+            var tlsMap = (Map<String, Object>) ClientConfig.get().getMappedConfig().get(ClientConfig.TLS);
+            if (tlsMap != null && !Boolean.TRUE.equals(tlsMap.get(TLSConfig.VERIFY_HOSTNAME))) {
+                final Properties props = System.getProperties();
+                props.setProperty("jdk.internal.httpclient.disableHostnameVerification", Boolean.TRUE.toString());
+            }
 
-            if (ClientConfig.get().getMappedConfig().get(ClientConfig.TLS) instanceof Map) {
+        } else throw new RuntimeException("Invalid client configuration provided.");
+
+        final var current = config;
+        final var proxyHost = current.getProxyHost() != null && !current.getProxyHost().isBlank() ? current.getProxyHost() : null;
+        /* Use SSL configuration if we have one, otherwise use the default context */
+        final var sslContextSchema = schema.getSslContextSchema();
+        final var client = HTTP_CLIENTS.getClient(
+                sslContextSchema != null ? sslContextSchema : DEFAULT_SSL_CONTEXT,
+                sslContextSchema != null ? TokenKeyStoreManager.getGeneration() : 0L,
+                () -> this.createSSLContext(schema),
+                proxyHost,
+                current.getProxyPort() == 0 ? 443 : current.getProxyPort(),
+                current.isEnableHttp2() ? HttpClient.Version.HTTP_2 : HttpClient.Version.HTTP_1_1,
+                Duration.ofMillis(ClientConfig.get().getTimeout())
+        );
 
-                // this a workaround to bypass the hostname verification in jdk11 http client.
-                var tlsMap = (Map<String, Object>) ClientConfig.get().getMappedConfig().get(ClientConfig.TLS);
-                if (tlsMap != null && !Boolean.TRUE.equals(tlsMap.get(TLSConfig.VERIFY_HOSTNAME))) {
-                    final Properties props = System.getProperties();
-                    props.setProperty("jdk.internal.httpclient.disableHostnameVerification", Boolean.TRUE.toString());
-                }
-                schema.setHttpClient(clientBuilder.build());
+        schema.setHttpClient(client);
+        return client;
+    }
 
-            } else throw new RuntimeException("Invalid client configuration provided.");
+    /**
+     * @return - registry holding the counters and latencies of every token schema.
+     */
+    public static TokenMetricsRegistry getMetrics() {
+        return METRICS;
+    }
 
+    /**
+     * @return - counters of the shared http client registry.
+     */
+    public static TokenHttpClientRegistry.Stats getHttpClientStats() {
+        return HTTP_CLIENTS.getStats();
+    }
 
-        }
-        return schema.getHttpClient();
+    /**
+     * Gets a signed jwt for the token request. Schemas with an assertion pool take a pre-signed jwt from the pool,
+     * other schemas sign one on the calling thread.
+     *
+     * @param schema - the token request schema
+     * @return - a signed jwt String.
+     */
+    private String getJwtAssertion(final RequestSchema schema) {
+        final var jwtSchema = schema.getJwtSchema();
+
+        if (jwtSchema.getAssertionPoolSize() <= 0)
+            return this.buildJwtToken(schema);
+
+        return ASSERTION_POOLS.computeIfAbsent(jwtSchema, key -> {
+            LOG.debug("Creating jwt assertion pool of size {}.", jwtSchema.getAssertionPoolSize());
+            return new JwtAssertionPool(
+                    jwtSchema.getAssertionPoolSize(),
+                    jwtSchema.hasExpiryFields() ? jwtSchema.getTtlUnit().unitToMillis(jwtSchema.getJwtTtl()) : 0L,
+                    jwtSchema.getAssertionPoolMaxAge(),
+                    jwtSchema.getAssertionPoolMargin(),
+                    () -> this.buildJwtToken(schema),
+                    ASSERTION_EXECUTOR
+            );
+        }).take();
     }
 
     /**
@@ -240,58 +1277,49 @@ public class TokenTransformerAction implements RequestTransformAction {
      * @param schema - the token request schema
      * @return - returns a newly constructed jwt String.
      */
-    private String buildJwtToken(final RequestSchema schema) {
-        final var tokenBuilder = new StringBuilder();
+    String buildJwtToken(final RequestSchema schema) {
+        final var jwtSchema = schema.getJwtSchema();
+        final var tokenBuilder = new StringBuilder(512);
 
-        /* create JWT payload header */
-        final var jwtHeaderMap = schema.getJwtSchema().getJwtHeader().buildJwtMap(schema.getJwtSchema().getJwtTtl(), schema.getJwtSchema().getTtlUnit());
-        final var jwtHeaderString = JsonMapper.toJson(jwtHeaderMap);
-        tokenBuilder.append(org.apache.commons.codec.binary.Base64.encodeBase64URLSafeString(jwtHeaderString.getBytes(StandardCharsets.UTF_8)));
+        /* create JWT payload header and body, static fields are encoded once per schema. */
+        tokenBuilder.append(jwtSchema.getSignedJwtHeader().encode(jwtSchema.getJwtTtl(), jwtSchema.getTtlUnit()));
         tokenBuilder.append(".");
-
-        /* create JWT payload body */
-        final var jwtBodyMap = schema.getJwtSchema().getJwtBody().buildJwtMap(schema.getJwtSchema().getJwtTtl(), schema.getJwtSchema().getTtlUnit());
-        final var jwtBodyString = JsonMapper.toJson(jwtBodyMap);
-        tokenBuilder.append(org.apache.commons.codec.binary.Base64.encodeBase64URLSafeString(jwtBodyString.getBytes(StandardCharsets.UTF_8)));
-        if(LOG.isTraceEnabled()) LOG.trace("jwtHeaderString = {} jwtBodyString = {}", jwtHeaderString, jwtBodyString);
+        tokenBuilder.append(jwtSchema.getJwtBody().encode(jwtSchema.getJwtTtl(), jwtSchema.getTtlUnit()));
 
         final var privateKey = this.keyStoreManager.getPrivateKey(
-                schema.getJwtSchema().getKeyStore().getName(),
-                schema.getJwtSchema().getKeyStore().getPassword(),
-                schema.getJwtSchema().getKeyStore().getAlias(),
-                schema.getJwtSchema().getKeyStore().getKeyPass()
+                jwtSchema.getKeyStore().getName(),
+                jwtSchema.getKeyStore().getPassword(),
+                jwtSchema.getKeyStore().getAlias(),
+                jwtSchema.getKeyStore().getKeyPass()
         );
 
         if(LOG.isTraceEnabled()) LOG.trace("Created PrivateKey with name {} password {} alias {} keyPass {}",
-                schema.getJwtSchema().getKeyStore().getName(),
-                schema.getJwtSchema().getKeyStore().getPassword(),
-                schema.getJwtSchema().getKeyStore().getAlias(),
-                schema.getJwtSchema().getKeyStore().getKeyPass()
+                jwtSchema.getKeyStore().getName(),
+                jwtSchema.getKeyStore().getPassword(),
+                jwtSchema.getKeyStore().getAlias(),
+                jwtSchema.getKeyStore().getKeyPass()
         );
 
         /* create a signed payload from 'jwtHeader' + '.' + 'jwtBody'  */
-        if(LOG.isTraceEnabled()) LOG.trace("JWT Algorithm = {}", schema.getJwtSchema().getAlgorithm());
-        final Signature signature;
-        try {
-            signature = Signature.getInstance(schema.getJwtSchema().getAlgorithm());
-        } catch (NoSuchAlgorithmException e) {
-            LOG.error("NoSuchAlgorithmException", e);
-            throw new IllegalArgumentException("Algorithm '" + schema.getJwtSchema().getAlgorithm() + "' is invalid.");
-        }
-
+        if(LOG.isTraceEnabled()) LOG.trace("JWT Algorithm = {}", jwtSchema.getSignatureAlgorithm());
+        final var signature = getSignature(jwtSchema.getSignatureAlgorithm());
 
         try {
             signature.initSign(privateKey);
 
         } catch (InvalidKeyException e) {
             LOG.error("InvalidKeyException", e);
-            throw new IllegalArgumentException("Invalid key for selected algorithm '" + schema.getJwtSchema().getAlgorithm() +"'.");
+            throw new IllegalArgumentException("Invalid key for selected algorithm '" + jwtSchema.getAlgorithm() +"'.");
         }
 
         final String signedPayload;
         try {
             signature.update(tokenBuilder.toString().getBytes(StandardCharsets.UTF_8));
-            signedPayload = org.apache.commons.codec.binary.Base64.encodeBase64URLSafeString(signature.sign());
+            final var jwtAlgorithm = jwtSchema.getJwtAlgorithm();
+
+            /* ECDSA signatures are converted from DER to the JOSE format, other algorithms are used as is. */
+            final var signed = jwtAlgorithm == null ? signature.sign() : jwtAlgorithm.toJose(signature.sign());
+            signedPayload = org.apache.commons.codec.binary.Base64.encodeBase64URLSafeString(signed);
 
         } catch (SignatureException e) {
             LOG.error("SignatureException", e);
@@ -304,6 +1332,24 @@ public class TokenTransformerAction implements RequestTransformAction {
         return tokenBuilder.toString();
     }
 
+    /**
+     * Gets the signature engine for an algorithm. Engines are reused per thread, since a Signature is not thread-safe.
+     *
+     * @param algorithm - the signing algorithm.
+     * @return - the signature engine for the current thread.
+     */
+    private static Signature getSignature(final String algorithm) {
+        return SIGNATURES.get().computeIfAbsent(algorithm, alg -> {
+            try {
+                return Signature.getInstance(alg);
+
+            } catch (NoSuchAlgorithmException e) {
+                LOG.error("NoSuchAlgorithmException", e);
+                throw new IllegalArgumentException("Algorithm '" + alg + "' is invalid.");
+            }
+        });
+    }
+
     /**
      * Token requests that specify needing a different SSLContext will be constructed here.
      * Otherwise, the default context will be used.
@@ -326,8 +1372,9 @@ public class TokenTransformerAction implements RequestTransformAction {
             }
         }
 
-        /* Create a new context if we don't have one cached, or if we have cache disabled. */
-        if (schema.getSslContext() == null || !schema.isCacheSSLContext()) {
+        /* Create a new context if we don't have one cached, if we have cache disabled, or if a keystore was reloaded since. */
+        final var keyStoreGeneration = TokenKeyStoreManager.getGeneration();
+        if (schema.getSslContext() == null || !schema.isCacheSSLContext() || schema.getSslContextGeneration() != keyStoreGeneration) {
 
             LOG.debug("Creating new SSL context from the SSL context schema.");
 
@@ -367,6 +1414,7 @@ public class TokenTransformerAction implements RequestTransformAction {
             }
 
             schema.setSslContext(sslContext);
+            schema.setSslContextGeneration(keyStoreGeneration);
         }
         return schema.getSslContext();
     }
@@ -377,10 +1425,10 @@ public class TokenTransformerAction implements RequestTransformAction {
      * @param update - the update schema.
      * @param resultMap - the to-be populated result map.
      */
-    private void updateResultMapFromSchema(final UpdateSchema update, final SharedVariableSchema sharedVariables, final Map<String, Object> resultMap) {
+    void updateResultMapFromSchema(final UpdateSchema update, final SharedVariableSchema sharedVariables, final Map<String, Object> resultMap) {
         if (update.getBody() != null && !update.getBody().isEmpty()) {
-            final var requestBodyUpdateMap = new HashMap<>(update.getResolvedBody(sharedVariables));
-            resultMap.put("requestBody", requestBodyUpdateMap);
+            /* the memoized body is read-only, so it is handed over as is instead of copied on every request. */
+            resultMap.put("requestBody", update.getResolvedBody(sharedVariables));
         }
 
         Map<String, Object> requestHeaders = (Map)resultMap.get(REQUEST_HEADERS);
@@ -398,18 +1446,6 @@ public class TokenTransformerAction implements RequestTransformAction {
         }
     }
 
-    /**
-     * Returns true if you a new client should be created.
-     * If the client is null or if we do not want to cache the client, a new client will need to be created.
-     *
-     * @param schema - the schema containing both the client and cache configuration.
-     * @return - true if client should be created.
-     */
-    private boolean shouldCreateHttpClient(final RequestSchema schema) {
-        return schema.getHttpClient() == null
-                || !schema.isCacheHttpClient();
-    }
-
     /**
      * Returns true if you a new HTTP client should be created.
      * If the request is null or if we have a JWT configuration, a new request will need to be created.
@@ -429,9 +1465,35 @@ public class TokenTransformerAction implements RequestTransformAction {
      * @return - true if token is not expired
      */
     private boolean isExpired(final TokenSchema schema) {
-        final var waitLengthUnit = schema.getSharedVariables().getTokenTtlUnit();
-        final var waitLengthAsMillis = waitLengthUnit.unitToMillis(schema.getSharedVariables().getWaitLength());
-        return System.currentTimeMillis() >= (schema.getSharedVariables().getExpiration() - waitLengthAsMillis);
+        return isExpired(schema.getSharedVariables(), schema.getSharedVariables().getExpiration());
+    }
+
+    private static boolean isExpired(final SharedVariableSchema sharedVariables, final long expiration) {
+        final var waitLengthUnit = sharedVariables.getTokenTtlUnit();
+        final var waitLengthAsMillis = waitLengthUnit.unitToMillis(sharedVariables.getWaitLength());
+        return System.currentTimeMillis() >= (expiration - waitLengthAsMillis);
+    }
+
+    /**
+     * Checks to see if an expired token can still be served while it is being refreshed.
+     * A token is servable for staleLength after the waitLength grace period is hit, but never past its actual expiration.
+     *
+     * @param schema - token configuration
+     * @return - true if the cached token can be served stale
+     */
+    private boolean isServableStale(final TokenSchema schema) {
+        final var sharedVariables = schema.getSharedVariables();
+        final var tokenState = sharedVariables.getTokenState();
+
+        if (sharedVariables.getStaleLength() <= 0 || tokenState.getAccessToken() == null)
+            return false;
+
+        final var ttlUnit = sharedVariables.getTokenTtlUnit();
+        final var staleUntil = tokenState.getExpiration()
+                - ttlUnit.unitToMillis(sharedVariables.getWaitLength())
+                + ttlUnit.unitToMillis(sharedVariables.getStaleLength());
+        final var now = System.currentTimeMillis();
+        return now < staleUntil && now < tokenState.getExpiration();
     }
 
 
@@ -2,10 +2,14 @@ package com.networknt.rule.generic.token;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.SerializationFeature;
 import com.networknt.config.Config;
 import com.networknt.rule.generic.token.schema.TokenSchema;
 import org.apache.commons.lang3.NotImplementedException;
 
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.HexFormat;
 import java.util.List;
 import java.util.Map;
 
@@ -17,6 +21,35 @@ public class TokenTransformerConfig {
     public static final String PROXY_PORT = "proxyPort";
     public static final String ENABLE_HTTP2 = "enableHttp2";
     public static final String MODULE_MASKS = "moduleMasks";
+    public static final String PROACTIVE_REFRESH = "proactiveRefresh";
+    public static final String PROACTIVE_REFRESH_LEAD_TIME = "proactiveRefreshLeadTime";
+    public static final String PROACTIVE_REFRESH_JITTER = "proactiveRefreshJitter";
+    private static final long DEFAULT_PROACTIVE_REFRESH_LEAD_TIME = 10000L;
+    private static final long DEFAULT_PROACTIVE_REFRESH_JITTER = 5000L;
+    public static final String HTTP_CLIENT_IDLE_TIMEOUT = "httpClientIdleTimeout";
+    private static final long DEFAULT_HTTP_CLIENT_IDLE_TIMEOUT = 300000L;
+    public static final String PERSISTENT_CACHE = "persistentCache";
+    public static final String PERSISTENT_CACHE_DIR = "persistentCacheDir";
+    public static final String PERSISTENT_CACHE_KEY = "persistentCacheKey";
+    public static final String TOKEN_STORE = "tokenStore";
+    public static final String TOKEN_STORE_DIR = "tokenStoreDir";
+    public static final String TOKEN_STORE_KEY = "tokenStoreKey";
+    public static final String TOKEN_STORE_LEASE = "tokenStoreLease";
+    public static final String TOKEN_STORE_MEMORY = "memory";
+    public static final String TOKEN_STORE_FILE = "file";
+    private static final long DEFAULT_TOKEN_STORE_LEASE = 10000L;
+    public static final String CIRCUIT_BREAKER = "circuitBreaker";
+    public static final String CIRCUIT_BREAKER_THRESHOLD = "circuitBreakerThreshold";
+    public static final String CIRCUIT_BREAKER_BACKOFF = "circuitBreakerBackoff";
+    public static final String CIRCUIT_BREAKER_MAX_BACKOFF = "circuitBreakerMaxBackoff";
+    public static final String CIRCUIT_BREAKER_JITTER = "circuitBreakerJitter";
+    private static final int DEFAULT_CIRCUIT_BREAKER_THRESHOLD = 3;
+    private static final long DEFAULT_CIRCUIT_BREAKER_BACKOFF = 1000L;
+    private static final long DEFAULT_CIRCUIT_BREAKER_MAX_BACKOFF = 60000L;
+    private static final long DEFAULT_CIRCUIT_BREAKER_JITTER = 1000L;
+    public static final String PREFETCH = "prefetch";
+    public static final String PREFETCH_TIMEOUT = "prefetchTimeout";
+    private static final long DEFAULT_PREFETCH_TIMEOUT = 30000L;
     private final Config config;
     private final Map<String, Object> mappedConfig;
 
@@ -35,13 +68,76 @@ public class TokenTransformerConfig {
     @JsonProperty("tokenSchemas")
     private Map<String, TokenSchema> tokenSchemas;
 
+    @JsonProperty("proactiveRefresh")
+    private boolean proactiveRefresh;
+
+    @JsonProperty("proactiveRefreshLeadTime")
+    private long proactiveRefreshLeadTime = DEFAULT_PROACTIVE_REFRESH_LEAD_TIME;
+
+    @JsonProperty("proactiveRefreshJitter")
+    private long proactiveRefreshJitter = DEFAULT_PROACTIVE_REFRESH_JITTER;
+
+    @JsonProperty("httpClientIdleTimeout")
+    private long httpClientIdleTimeout = DEFAULT_HTTP_CLIENT_IDLE_TIMEOUT;
+
+    @JsonProperty("persistentCache")
+    private boolean persistentCache;
+
+    @JsonProperty("persistentCacheDir")
+    private String persistentCacheDir;
+
+    @JsonProperty("persistentCacheKey")
+    private char[] persistentCacheKey;
+
+    @JsonProperty("tokenStore")
+    private String tokenStore = TOKEN_STORE_MEMORY;
+
+    @JsonProperty("tokenStoreDir")
+    private String tokenStoreDir;
+
+    @JsonProperty("tokenStoreKey")
+    private char[] tokenStoreKey;
+
+    @JsonProperty("tokenStoreLease")
+    private long tokenStoreLease = DEFAULT_TOKEN_STORE_LEASE;
+
+    @JsonProperty("circuitBreaker")
+    private boolean circuitBreaker;
+
+    @JsonProperty("circuitBreakerThreshold")
+    private int circuitBreakerThreshold = DEFAULT_CIRCUIT_BREAKER_THRESHOLD;
+
+    @JsonProperty("circuitBreakerBackoff")
+    private long circuitBreakerBackoff = DEFAULT_CIRCUIT_BREAKER_BACKOFF;
+
+    @JsonProperty("circuitBreakerMaxBackoff")
+    private long circuitBreakerMaxBackoff = DEFAULT_CIRCUIT_BREAKER_MAX_BACKOFF;
+
+    @JsonProperty("circuitBreakerJitter")
+    private long circuitBreakerJitter = DEFAULT_CIRCUIT_BREAKER_JITTER;
+
+    @JsonProperty("prefetch")
+    private boolean prefetch;
+
+    @JsonProperty("prefetchTimeout")
+    private long prefetchTimeout = DEFAULT_PREFETCH_TIMEOUT;
+
     public TokenTransformerConfig() {
         this(CONFIG_NAME);
     }
 
     public TokenTransformerConfig(final String configName) {
+        this(Config.getInstance().getJsonMapConfigNoCache(configName));
+    }
+
+    /**
+     * Please note that this constructor is only for testing to load configurations that are not in a file.
+     *
+     * @param mappedConfig - the config values.
+     */
+    TokenTransformerConfig(final Map<String, Object> mappedConfig) {
         this.config = Config.getInstance();
-        this.mappedConfig = this.config.getJsonMapConfigNoCache(configName);
+        this.mappedConfig = mappedConfig;
         setConfigData();
     }
 
@@ -65,10 +161,90 @@ public class TokenTransformerConfig {
         return tokenSchemas;
     }
 
+    /**
+     * @param tokenSchema - name of the token schema.
+     * @return - the schema as it was read from the config, used to tell whether a schema changed between two configs.
+     */
+    public Object getRawTokenSchema(final String tokenSchema) {
+        return this.mappedConfig.get(TOKEN_SCHEMA) instanceof Map ? ((Map<?, ?>) this.mappedConfig.get(TOKEN_SCHEMA)).get(tokenSchema) : null;
+    }
+
     public List<String> getModuleMasks() {
         return moduleMasks;
     }
 
+    public boolean isProactiveRefresh() {
+        return proactiveRefresh;
+    }
+
+    public long getProactiveRefreshLeadTime() {
+        return proactiveRefreshLeadTime;
+    }
+
+    public long getProactiveRefreshJitter() {
+        return proactiveRefreshJitter;
+    }
+
+    public long getHttpClientIdleTimeout() {
+        return httpClientIdleTimeout;
+    }
+
+    public boolean isPersistentCache() {
+        return persistentCache;
+    }
+
+    public String getPersistentCacheDir() {
+        return persistentCacheDir;
+    }
+
+    public char[] getPersistentCacheKey() {
+        return persistentCacheKey;
+    }
+
+    public String getTokenStore() {
+        return tokenStore;
+    }
+
+    public String getTokenStoreDir() {
+        return tokenStoreDir;
+    }
+
+    public char[] getTokenStoreKey() {
+        return tokenStoreKey;
+    }
+
+    public long getTokenStoreLease() {
+        return tokenStoreLease;
+    }
+
+    public boolean isCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    public int getCircuitBreakerThreshold() {
+        return circuitBreakerThreshold;
+    }
+
+    public long getCircuitBreakerBackoff() {
+        return circuitBreakerBackoff;
+    }
+
+    public long getCircuitBreakerMaxBackoff() {
+        return circuitBreakerMaxBackoff;
+    }
+
+    public long getCircuitBreakerJitter() {
+        return circuitBreakerJitter;
+    }
+
+    public boolean isPrefetch() {
+        return prefetch;
+    }
+
+    public long getPrefetchTimeout() {
+        return prefetchTimeout;
+    }
+
     private void setProxyPort(int proxyPort) {
         this.proxyPort = proxyPort;
     }
@@ -89,6 +265,78 @@ public class TokenTransformerConfig {
         this.tokenSchemas = tokenSchemas;
     }
 
+    private void setProactiveRefresh(boolean proactiveRefresh) {
+        this.proactiveRefresh = proactiveRefresh;
+    }
+
+    private void setProactiveRefreshLeadTime(long proactiveRefreshLeadTime) {
+        this.proactiveRefreshLeadTime = proactiveRefreshLeadTime;
+    }
+
+    private void setProactiveRefreshJitter(long proactiveRefreshJitter) {
+        this.proactiveRefreshJitter = proactiveRefreshJitter;
+    }
+
+    private void setHttpClientIdleTimeout(long httpClientIdleTimeout) {
+        this.httpClientIdleTimeout = httpClientIdleTimeout;
+    }
+
+    private void setPersistentCache(boolean persistentCache) {
+        this.persistentCache = persistentCache;
+    }
+
+    private void setPersistentCacheDir(String persistentCacheDir) {
+        this.persistentCacheDir = persistentCacheDir;
+    }
+
+    private void setPersistentCacheKey(char[] persistentCacheKey) {
+        this.persistentCacheKey = persistentCacheKey;
+    }
+
+    private void setTokenStore(String tokenStore) {
+        this.tokenStore = tokenStore;
+    }
+
+    private void setTokenStoreDir(String tokenStoreDir) {
+        this.tokenStoreDir = tokenStoreDir;
+    }
+
+    private void setTokenStoreKey(char[] tokenStoreKey) {
+        this.tokenStoreKey = tokenStoreKey;
+    }
+
+    private void setTokenStoreLease(long tokenStoreLease) {
+        this.tokenStoreLease = tokenStoreLease;
+    }
+
+    private void setCircuitBreaker(boolean circuitBreaker) {
+        this.circuitBreaker = circuitBreaker;
+    }
+
+    private void setCircuitBreakerThreshold(int circuitBreakerThreshold) {
+        this.circuitBreakerThreshold = circuitBreakerThreshold;
+    }
+
+    private void setCircuitBreakerBackoff(long circuitBreakerBackoff) {
+        this.circuitBreakerBackoff = circuitBreakerBackoff;
+    }
+
+    private void setCircuitBreakerMaxBackoff(long circuitBreakerMaxBackoff) {
+        this.circuitBreakerMaxBackoff = circuitBreakerMaxBackoff;
+    }
+
+    private void setCircuitBreakerJitter(long circuitBreakerJitter) {
+        this.circuitBreakerJitter = circuitBreakerJitter;
+    }
+
+    private void setPrefetch(boolean prefetch) {
+        this.prefetch = prefetch;
+    }
+
+    private void setPrefetchTimeout(long prefetchTimeout) {
+        this.prefetchTimeout = prefetchTimeout;
+    }
+
     private void setConfigData() {
         var object = this.mappedConfig.get(PROXY_HOST);
         if (object instanceof String)
@@ -108,10 +356,87 @@ public class TokenTransformerConfig {
                 && ((List<?>) object).get(0) instanceof String)
             setModuleMasks((List<String>) object);
 
+        object = this.mappedConfig.get(PROACTIVE_REFRESH);
+        if (object instanceof Boolean)
+            setProactiveRefresh((Boolean) object);
+
+        object = this.mappedConfig.get(PROACTIVE_REFRESH_LEAD_TIME);
+        if (object instanceof Number)
+            setProactiveRefreshLeadTime(((Number) object).longValue());
+
+        object = this.mappedConfig.get(PROACTIVE_REFRESH_JITTER);
+        if (object instanceof Number)
+            setProactiveRefreshJitter(((Number) object).longValue());
+
+        object = this.mappedConfig.get(HTTP_CLIENT_IDLE_TIMEOUT);
+        if (object instanceof Number)
+            setHttpClientIdleTimeout(((Number) object).longValue());
+
+        object = this.mappedConfig.get(PERSISTENT_CACHE);
+        if (object instanceof Boolean)
+            setPersistentCache((Boolean) object);
+
+        object = this.mappedConfig.get(PERSISTENT_CACHE_DIR);
+        if (object instanceof String && !((String) object).isBlank())
+            setPersistentCacheDir((String) object);
+
+        object = this.mappedConfig.get(PERSISTENT_CACHE_KEY);
+        if (object instanceof String && !((String) object).isBlank())
+            setPersistentCacheKey(((String) object).toCharArray());
+
+        object = this.mappedConfig.get(TOKEN_STORE);
+        if (object instanceof String && !((String) object).isBlank())
+            setTokenStore(((String) object).trim());
+
+        object = this.mappedConfig.get(TOKEN_STORE_DIR);
+        if (object instanceof String && !((String) object).isBlank())
+            setTokenStoreDir((String) object);
+
+        object = this.mappedConfig.get(TOKEN_STORE_KEY);
+        if (object instanceof String && !((String) object).isBlank())
+            setTokenStoreKey(((String) object).toCharArray());
+
+        object = this.mappedConfig.get(TOKEN_STORE_LEASE);
+        if (object instanceof Number)
+            setTokenStoreLease(((Number) object).longValue());
+
+        object = this.mappedConfig.get(CIRCUIT_BREAKER);
+        if (object instanceof Boolean)
+            setCircuitBreaker((Boolean) object);
+
+        object = this.mappedConfig.get(CIRCUIT_BREAKER_THRESHOLD);
+        if (object instanceof Number)
+            setCircuitBreakerThreshold(((Number) object).intValue());
+
+        object = this.mappedConfig.get(CIRCUIT_BREAKER_BACKOFF);
+        if (object instanceof Number)
+            setCircuitBreakerBackoff(((Number) object).longValue());
+
+        object = this.mappedConfig.get(CIRCUIT_BREAKER_MAX_BACKOFF);
+        if (object instanceof Number)
+            setCircuitBreakerMaxBackoff(((Number) object).longValue());
+
+        object = this.mappedConfig.get(CIRCUIT_BREAKER_JITTER);
+        if (object instanceof Number)
+            setCircuitBreakerJitter(((Number) object).longValue());
+
+        object = this.mappedConfig.get(PREFETCH);
+        if (object instanceof Boolean)
+            setPrefetch((Boolean) object);
+
+        object = this.mappedConfig.get(PREFETCH_TIMEOUT);
+        if (object instanceof Number)
+            setPrefetchTimeout(((Number) object).longValue());
+
         if (this.mappedConfig.get(TOKEN_SCHEMA) != null) {
             final var rawTokenSchemas = this.mappedConfig.get(TOKEN_SCHEMA);
             if (rawTokenSchemas instanceof Map) {
                 final var converted = Config.getInstance().getMapper().convertValue(rawTokenSchemas, new TypeReference<Map<String, TokenSchema>>() {});
+
+                for (final var entry : converted.entrySet())
+                    if (entry.getValue() != null)
+                        entry.getValue().setFingerprint(fingerprint(((Map<?, ?>) rawTokenSchemas).get(entry.getKey())));
+
                 setTokenSchemas(converted);
             } else if (rawTokenSchemas instanceof String) {
                 // TODO - handle string.
@@ -120,4 +445,18 @@ public class TokenTransformerConfig {
         }
 
     }
+
+    /**
+     * @param rawTokenSchema - the schema as it was read from the config.
+     * @return - a short hash of the schema definition, the same for two definitions that only differ in the order of their keys.
+     */
+    static String fingerprint(final Object rawTokenSchema) {
+        try {
+            final var definition = Config.getInstance().getMapper().writer().with(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS).writeValueAsBytes(rawTokenSchema);
+            return HexFormat.of().formatHex(Arrays.copyOf(MessageDigest.getInstance("SHA-256").digest(definition), 8));
+
+        } catch (Exception e) {
+            throw new IllegalStateException("Could not fingerprint a token schema: " + e.getMessage(), e);
+        }
+    }
 }
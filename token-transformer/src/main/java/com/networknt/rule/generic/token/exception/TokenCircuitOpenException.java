@@ -0,0 +1,7 @@
+package com.networknt.rule.generic.token.exception;
+
+public class TokenCircuitOpenException extends RuntimeException {
+    public TokenCircuitOpenException(final String tokenSchema, final long retryIn) {
+        super("Token requests for schema '" + tokenSchema + "' are suspended after repeated failures, retrying in " + retryIn + "ms.");
+    }
+}
@@ -0,0 +1,9 @@
+package com.networknt.rule.generic.token.exception;
+
+import java.net.http.HttpRequest;
+
+public class TokenRequestTimeoutException extends RuntimeException {
+    public TokenRequestTimeoutException(final HttpRequest request) {
+        super("Request timed out when sending a request to: " + request.uri().toString());
+    }
+}
@@ -0,0 +1,7 @@
+package com.networknt.rule.generic.token.exception;
+
+public class TokenStoreLeaseTimeoutException extends RuntimeException {
+    public TokenStoreLeaseTimeoutException(final String tokenSchema) {
+        super("Timed out waiting on another instance to share the token for schema '" + tokenSchema + "'.");
+    }
+}
@@ -0,0 +1,150 @@
+package com.networknt.rule.generic.token.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free latency histogram with fixed buckets from 100 microseconds to 10 seconds.
+ * Percentiles are estimated as the upper bound of the bucket they fall in, which is precise enough to tune ttls and timeouts against.
+ */
+public class LatencyHistogram {
+
+    /* upper bounds of the buckets in microseconds, anything slower goes into the overflow bucket. */
+    private static final long[] BUCKET_BOUNDS = {
+            100, 250, 500,
+            1_000, 2_500, 5_000,
+            10_000, 25_000, 50_000,
+            100_000, 250_000, 500_000,
+            1_000_000, 2_500_000, 5_000_000,
+            10_000_000
+    };
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_BOUNDS.length + 1);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0L);
+
+    /**
+     * @param nanos - the measured duration in nanoseconds.
+     */
+    public void record(final long nanos) {
+        final var micros = TimeUnit.NANOSECONDS.toMicros(Math.max(0, nanos));
+        var bucket = 0;
+
+        while (bucket < BUCKET_BOUNDS.length && micros > BUCKET_BOUNDS[bucket])
+            bucket++;
+
+        this.buckets.incrementAndGet(bucket);
+        this.count.increment();
+        this.sum.add(micros);
+        this.max.accumulate(micros);
+    }
+
+    /**
+     * Records the time passed since a start taken with {@link System#nanoTime()}.
+     *
+     * @param startNanos - the start time.
+     */
+    public void recordSince(final long startNanos) {
+        this.record(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * @return - a snapshot of the histogram.
+     */
+    public Snapshot getSnapshot() {
+        final var counts = new long[this.buckets.length()];
+
+        for (int x = 0; x < counts.length; x++)
+            counts[x] = this.buckets.get(x);
+
+        return new Snapshot(counts, this.count.sum(), this.sum.sum(), this.max.get());
+    }
+
+    /**
+     * Histogram values at the time it was taken. All times are in microseconds.
+     */
+    public static final class Snapshot {
+        private final long[] counts;
+        private final long count;
+        private final long sum;
+        private final long max;
+
+        private Snapshot(final long[] counts, final long count, final long sum, final long max) {
+            this.counts = counts;
+            this.count = count;
+            this.sum = sum;
+            this.max = max;
+        }
+
+        /**
+         * @return - number of recorded durations.
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * @return - sum of the recorded durations.
+         */
+        public long getSum() {
+            return sum;
+        }
+
+        /**
+         * @return - the longest recorded duration.
+         */
+        public long getMax() {
+            return max;
+        }
+
+        /**
+         * @return - the average recorded duration, 0 if nothing was recorded.
+         */
+        public long getMean() {
+            return count == 0 ? 0 : sum / count;
+        }
+
+        /**
+         * @param percentile - the percentile between 0 and 100.
+         * @return - upper bound of the bucket the percentile falls in, or the max for the overflow bucket.
+         */
+        public long getPercentile(final double percentile) {
+
+            if (count == 0)
+                return 0;
+
+            final var rank = (long) Math.ceil(count * Math.min(100, Math.max(0, percentile)) / 100.0);
+            var seen = 0L;
+
+            for (int x = 0; x < BUCKET_BOUNDS.length; x++) {
+                seen += counts[x];
+
+                if (seen >= rank)
+                    return Math.min(BUCKET_BOUNDS[x], max);
+            }
+            return max;
+        }
+
+        /**
+         * @return - upper bounds of the buckets in microseconds, not including the overflow bucket.
+         */
+        public static long[] getBucketBounds() {
+            return BUCKET_BOUNDS.clone();
+        }
+
+        /**
+         * @return - number of durations per bucket, the last one being the overflow bucket.
+         */
+        public long[] getBucketCounts() {
+            return counts.clone();
+        }
+
+        @Override
+        public String toString() {
+            return "Snapshot{count=" + count + ", mean=" + getMean() + "us, p50=" + getPercentile(50) + "us, p99=" + getPercentile(99) + "us, max=" + max + "us}";
+        }
+    }
+}
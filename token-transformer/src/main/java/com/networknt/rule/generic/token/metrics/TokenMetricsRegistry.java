@@ -0,0 +1,34 @@
+package com.networknt.rule.generic.token.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Process-wide registry of token schema metrics.
+ * Metrics are plain counters and histograms, so any metrics backend can poll {@link #getSnapshot()} and export them in its own format.
+ */
+public class TokenMetricsRegistry {
+
+    private final Map<String, TokenSchemaMetrics> schemas = new ConcurrentHashMap<>();
+
+    /**
+     * @param tokenSchema - name of the token schema.
+     * @return - the metrics of the schema, created on first use.
+     */
+    public TokenSchemaMetrics forSchema(final String tokenSchema) {
+        return this.schemas.computeIfAbsent(tokenSchema, name -> new TokenSchemaMetrics());
+    }
+
+    /**
+     * @return - a snapshot of the metrics of every schema used so far, keyed by tokenSchema name.
+     */
+    public Map<String, TokenSchemaMetrics.Snapshot> getSnapshot() {
+        final var snapshot = new TreeMap<String, TokenSchemaMetrics.Snapshot>();
+
+        for (final var entry : this.schemas.entrySet())
+            snapshot.put(entry.getKey(), entry.getValue().getSnapshot());
+
+        return snapshot;
+    }
+}
@@ -0,0 +1,167 @@
+package com.networknt.rule.generic.token.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and latencies of a single token schema.
+ */
+public class TokenSchemaMetrics {
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder staleHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder refreshes = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder circuitRejections = new LongAdder();
+    private final LatencyHistogram jwtBuild = new LatencyHistogram();
+    private final LatencyHistogram httpSend = new LatencyHistogram();
+    private final LatencyHistogram responseParse = new LatencyHistogram();
+
+    /**
+     * Counts a token served from cache.
+     */
+    public void recordHit() {
+        this.hits.increment();
+    }
+
+    /**
+     * Counts a token served from cache past its grace period, while it is being refreshed.
+     */
+    public void recordStaleHit() {
+        this.staleHits.increment();
+    }
+
+    /**
+     * Counts a caller that had to wait for a new token.
+     */
+    public void recordMiss() {
+        this.misses.increment();
+    }
+
+    /**
+     * Counts a successful token refresh.
+     */
+    public void recordRefresh() {
+        this.refreshes.increment();
+    }
+
+    /**
+     * Counts a failed token refresh.
+     */
+    public void recordFailure() {
+        this.failures.increment();
+    }
+
+    /**
+     * Counts a token request not sent because the circuit of the schema was open.
+     */
+    public void recordCircuitRejection() {
+        this.circuitRejections.increment();
+    }
+
+    /**
+     * @return - time taken to build and sign jwt assertions.
+     */
+    public LatencyHistogram getJwtBuild() {
+        return jwtBuild;
+    }
+
+    /**
+     * @return - time from sending a token request to receiving its response.
+     */
+    public LatencyHistogram getHttpSend() {
+        return httpSend;
+    }
+
+    /**
+     * @return - time taken to read the token response into the shared variables.
+     */
+    public LatencyHistogram getResponseParse() {
+        return responseParse;
+    }
+
+    /**
+     * @return - a snapshot of the counters and latencies.
+     */
+    public Snapshot getSnapshot() {
+        return new Snapshot(this);
+    }
+
+    /**
+     * Counters and latencies of a schema at the time it was taken. Latencies are in microseconds.
+     */
+    public static final class Snapshot {
+        private final long hits;
+        private final long staleHits;
+        private final long misses;
+        private final long refreshes;
+        private final long failures;
+        private final long circuitRejections;
+        private final LatencyHistogram.Snapshot jwtBuild;
+        private final LatencyHistogram.Snapshot httpSend;
+        private final LatencyHistogram.Snapshot responseParse;
+
+        private Snapshot(final TokenSchemaMetrics metrics) {
+            this.hits = metrics.hits.sum();
+            this.staleHits = metrics.staleHits.sum();
+            this.misses = metrics.misses.sum();
+            this.refreshes = metrics.refreshes.sum();
+            this.failures = metrics.failures.sum();
+            this.circuitRejections = metrics.circuitRejections.sum();
+            this.jwtBuild = metrics.jwtBuild.getSnapshot();
+            this.httpSend = metrics.httpSend.getSnapshot();
+            this.responseParse = metrics.responseParse.getSnapshot();
+        }
+
+        public long getHits() {
+            return hits;
+        }
+
+        public long getStaleHits() {
+            return staleHits;
+        }
+
+        public long getMisses() {
+            return misses;
+        }
+
+        public long getRefreshes() {
+            return refreshes;
+        }
+
+        public long getFailures() {
+            return failures;
+        }
+
+        public long getCircuitRejections() {
+            return circuitRejections;
+        }
+
+        /**
+         * @return - share of callers served from cache, stale or not. 0 if there were no callers.
+         */
+        public double getHitRatio() {
+            final var total = hits + staleHits + misses;
+            return total == 0 ? 0 : (double) (hits + staleHits) / total;
+        }
+
+        public LatencyHistogram.Snapshot getJwtBuild() {
+            return jwtBuild;
+        }
+
+        public LatencyHistogram.Snapshot getHttpSend() {
+            return httpSend;
+        }
+
+        public LatencyHistogram.Snapshot getResponseParse() {
+            return responseParse;
+        }
+
+        @Override
+        public String toString() {
+            return "Snapshot{hits=" + hits + ", staleHits=" + staleHits + ", misses=" + misses
+                    + ", refreshes=" + refreshes + ", failures=" + failures + ", circuitRejections=" + circuitRejections
+                    + ", jwtBuild=" + jwtBuild + ", httpSend=" + httpSend + ", responseParse=" + responseParse + "}";
+        }
+    }
+}
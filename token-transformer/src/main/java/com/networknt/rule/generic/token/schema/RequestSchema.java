@@ -1,5 +1,6 @@
 package com.networknt.rule.generic.token.schema;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.networknt.rule.generic.token.schema.cert.SSLContextSchema;
@@ -10,7 +11,6 @@ import org.slf4j.LoggerFactory;
 import javax.net.ssl.SSLContext;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
-import java.util.HashMap;
 import java.util.Map;
 
 
@@ -27,6 +27,8 @@ public class RequestSchema extends SharedVariableRead {
     protected Map<String, String> body;
     @JsonProperty("type")
     private String type;
+    @JsonProperty("timeout")
+    private long timeout;
     @JsonProperty("cacheHttpClient")
     private boolean cacheHttpClient;
     @JsonProperty("cacheSSLContext")
@@ -42,6 +44,13 @@ public class RequestSchema extends SharedVariableRead {
     @JsonProperty("jwtSchema")
     private JWTSchema jwtSchema;
 
+    /* keystore generation the cached ssl context was built from. */
+    private volatile long sslContextGeneration;
+
+    /* headers and body compiled into templates when they are set. */
+    private volatile SharedVariableTemplateMap compiledHeaders;
+    private volatile SharedVariableTemplateMap compiledBody;
+
     public Map<String, String> getHeaders() {
         return headers;
     }
@@ -60,15 +69,21 @@ public class RequestSchema extends SharedVariableRead {
 
     public void setHeaders(Map<String, String> headers) {
         this.headers = headers;
+        this.compiledHeaders = SharedVariableTemplateMap.compile(headers);
     }
 
     public void setBody(Map<String, String> body) {
         this.body = body;
+        this.compiledBody = SharedVariableTemplateMap.compile(body);
     }
 
     public String getUrl() {
         return url;
     }
+    public long getTimeout() {
+        return timeout;
+    }
+
     public SSLContextSchema getSslContextSchema() {
         return sslContextSchema;
     }
@@ -105,27 +120,29 @@ public class RequestSchema extends SharedVariableRead {
         this.sslContext = sslContext;
     }
 
+    @JsonIgnore
+    public long getSslContextGeneration() {
+        return sslContextGeneration;
+    }
+
+    @JsonIgnore
+    public void setSslContextGeneration(long sslContextGeneration) {
+        this.sslContextGeneration = sslContextGeneration;
+    }
+
     public Map<String, String> getResolvedHeaders(final SharedVariableSchema sharedVariableSchema) {
 
-        if (this.headers == null) {
+        if (this.headers == null)
             LOG.trace("No headers defined in request schema.");
-            return new HashMap<>();
-        }
 
-        final var resolvedHeaders = new HashMap<>(this.headers);
-        SharedVariableRead.updateMapFromSharedVariables(resolvedHeaders, sharedVariableSchema);
-        return resolvedHeaders;
+        return SharedVariableRead.resolveTemplateMap(this.compiledHeaders, this.headers, sharedVariableSchema);
     }
 
     public Map<String, String> getResolvedBody(final SharedVariableSchema sharedVariableSchema) {
 
-        if (this.body == null) {
+        if (this.body == null)
             LOG.trace("No body defined in request schema.");
-            return  new HashMap<>();
-        }
 
-        final var resolvedBody = new HashMap<>(this.body);
-        SharedVariableRead.updateMapFromSharedVariables(resolvedBody, sharedVariableSchema);
-        return resolvedBody;
+        return SharedVariableRead.resolveTemplateMap(this.compiledBody, this.body, sharedVariableSchema);
     }
 }
@@ -0,0 +1,111 @@
+package com.networknt.rule.generic.token.schema;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.ObjLongConsumer;
+import java.util.function.ToLongFunction;
+
+/**
+ * Precomputed accessors for every sharedVariables field that can be used with !ref.
+ * Replaces looking up getters and setters through BeanInfo every time a value is read or written.
+ */
+public enum SharedVariableField {
+
+    GRANT_TYPE("grantType", SharedVariableSchema::getGrantType, SharedVariableSchema::setGrantType),
+    AUTH_ISSUER("authIssuer", SharedVariableSchema::getAuthIssuer, SharedVariableSchema::setAuthIssuer),
+    AUTH_SUBJECT("authSubject", SharedVariableSchema::getAuthSubject, SharedVariableSchema::setAuthSubject),
+    AUTH_AUDIENCE("authAudience", SharedVariableSchema::getAuthAudience, SharedVariableSchema::setAuthAudience),
+    IV("iv", SharedVariableSchema::getIv, SharedVariableSchema::setIv),
+    TOKEN_TTL("tokenTtl", longGetter(SharedVariableSchema::getTokenTtl), longSetter(SharedVariableSchema::setTokenTtl)),
+    WAIT_LENGTH("waitLength", longGetter(SharedVariableSchema::getWaitLength), longSetter(SharedVariableSchema::setWaitLength)),
+    STALE_LENGTH("staleLength", longGetter(SharedVariableSchema::getStaleLength), longSetter(SharedVariableSchema::setStaleLength)),
+    CERT_FILENAME("certFilename", SharedVariableSchema::getCertFilename, SharedVariableSchema::setCertFilename),
+    CERT_PASSWORD("certPassword", charsGetter(SharedVariableSchema::getCertPassword), charsSetter(SharedVariableSchema::setCertPassword)),
+    USERNAME("username", SharedVariableSchema::getUsername, SharedVariableSchema::setUsername),
+    PASSWORD("password", charsGetter(SharedVariableSchema::getPassword), charsSetter(SharedVariableSchema::setPassword)),
+    CLIENT_ID("clientId", SharedVariableSchema::getClientId, SharedVariableSchema::setClientId),
+    SCOPE("scope", SharedVariableSchema::getScope, SharedVariableSchema::setScope),
+    CLIENT_SECRET("clientSecret", charsGetter(SharedVariableSchema::getClientSecret), charsSetter(SharedVariableSchema::setClientSecret)),
+    RESPONSE_TYPE("responseType", SharedVariableSchema::getResponseType, SharedVariableSchema::setResponseType),
+    EXPIRATION("expiration", longGetter(SharedVariableSchema::getExpiration), longSetter(SharedVariableSchema::setExpiration)),
+    ACCESS_TOKEN("accessToken", SharedVariableSchema::getAccessToken, SharedVariableSchema::setAccessToken),
+    CONSTRUCTED_JWT("constructedJwt", SharedVariableSchema::getConstructedJwt, SharedVariableSchema::setConstructedJwt);
+
+    private static final Map<String, SharedVariableField> FIELDS_BY_NAME = new HashMap<>();
+
+    static {
+        for (final var field : values())
+            FIELDS_BY_NAME.put(field.fieldName.toLowerCase(Locale.ROOT), field);
+    }
+
+    private final String fieldName;
+    private final Function<SharedVariableSchema, String> getter;
+    private final BiConsumer<SharedVariableSchema, String> setter;
+
+    SharedVariableField(final String fieldName, final Function<SharedVariableSchema, String> getter, final BiConsumer<SharedVariableSchema, String> setter) {
+        this.fieldName = fieldName;
+        this.getter = getter;
+        this.setter = setter;
+    }
+
+    public String getFieldName() {
+        return fieldName;
+    }
+
+    /**
+     * Finds the field for a sharedVariables name. Names are matched case-insensitively.
+     *
+     * @param fieldName - the sharedVariables field name.
+     * @return - the matching field, or null if there is none.
+     */
+    public static SharedVariableField find(final String fieldName) {
+        return fieldName == null ? null : FIELDS_BY_NAME.get(fieldName.toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * Reads the field value as a string.
+     *
+     * @param sharedVariableSchema - the shared variables being read.
+     * @return - the string value of the field.
+     */
+    public String read(final SharedVariableSchema sharedVariableSchema) {
+        final var value = this.getter.apply(sharedVariableSchema);
+
+        if (value == null)
+            throw new IllegalStateException("Shared variable '" + this.fieldName + "' is not set.");
+
+        return value;
+    }
+
+    /**
+     * Writes a string value to the field, converting it to the type of the field.
+     *
+     * @param sharedVariableSchema - the shared variables being written.
+     * @param value - the new string value.
+     */
+    public void write(final SharedVariableSchema sharedVariableSchema, final String value) {
+        this.setter.accept(sharedVariableSchema, value);
+    }
+
+    private static Function<SharedVariableSchema, String> longGetter(final ToLongFunction<SharedVariableSchema> getter) {
+        return schema -> String.valueOf(getter.applyAsLong(schema));
+    }
+
+    private static BiConsumer<SharedVariableSchema, String> longSetter(final ObjLongConsumer<SharedVariableSchema> setter) {
+        return (schema, value) -> setter.accept(schema, Long.parseLong(value));
+    }
+
+    private static Function<SharedVariableSchema, String> charsGetter(final Function<SharedVariableSchema, char[]> getter) {
+        return schema -> {
+            final var chars = getter.apply(schema);
+            return chars == null ? null : String.valueOf(chars);
+        };
+    }
+
+    private static BiConsumer<SharedVariableSchema, String> charsSetter(final BiConsumer<SharedVariableSchema, char[]> setter) {
+        return (schema, value) -> setter.accept(schema, value.toCharArray());
+    }
+}
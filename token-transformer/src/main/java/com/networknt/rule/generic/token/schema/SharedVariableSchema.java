@@ -1,11 +1,17 @@
 package com.networknt.rule.generic.token.schema;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.annotation.JsonSetter;
 import com.fasterxml.jackson.annotation.Nulls;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
 import java.util.regex.Pattern;
 
 /**
@@ -41,6 +47,9 @@ public class SharedVariableSchema {
     @JsonProperty("waitLength")
     private long waitLength;
 
+    @JsonProperty("staleLength")
+    private long staleLength;
+
     @JsonProperty("certFilename")
     private String certFilename;
 
@@ -65,17 +74,71 @@ public class SharedVariableSchema {
     @JsonProperty("responseType")
     private String responseType;
 
-    @JsonProperty("expiration")
-    private long expiration;
+    /* accessToken, expiration and constructedJwt, replaced as a whole so readers get a consistent view without locking. */
+    private final AtomicReference<TokenState> tokenState = new AtomicReference<>(TokenState.EMPTY);
 
-    @JsonProperty("accessToken")
-    private String accessToken;
+    /* changes with every write, so values derived from these variables can be cached until the next write. */
+    private static final AtomicLong GENERATIONS = new AtomicLong();
+    private volatile long generation = GENERATIONS.incrementAndGet();
 
-    @JsonProperty("constructedJwt")
-    private String constructedJwt;
+    /* values derived from these variables, keyed by what derived them, each valid while the generation it was derived at is current. */
+    private final Map<Object, Derived> derived = new ConcurrentHashMap<>();
+
+    public SharedVariableSchema() {
+    }
+
+    /**
+     * Copies every variable of another schema.
+     * New fields added to this class need to be copied here as well.
+     *
+     * @param other - the schema to copy.
+     */
+    protected SharedVariableSchema(final SharedVariableSchema other) {
+        this.copyFrom(other);
+    }
 
     public String getConstructedJwt() {
-        return constructedJwt;
+        return this.tokenState.get().getConstructedJwt();
+    }
+
+    /**
+     * Gets the current generation of these variables. It changes with every write and is never reused, so a value derived from
+     * the variables is still current if the generation read before deriving it has not changed.
+     *
+     * @return - the current generation.
+     */
+    @JsonIgnore
+    public long getGeneration() {
+        return this.generation;
+    }
+
+    /**
+     * Gets a value derived from these variables, deriving it again only after the variables change.
+     * The value is kept on these variables, so copies of a schema each keep their own and drop them along with the variables.
+     *
+     * @param key - identifies the derived value.
+     * @param derivation - derives the value from these variables.
+     * @return - the derived value.
+     * @param <T> - type of the derived value.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T getDerived(final Object key, final Function<SharedVariableSchema, T> derivation) {
+
+        /* the generation is read before deriving, so a write during the derivation makes the result stale rather than wrong. */
+        final var generation = this.generation;
+        final var cached = this.derived.get(key);
+
+        if (cached != null && cached.generation == generation)
+            return (T) cached.value;
+
+        final var value = derivation.apply(this);
+        this.derived.put(key, new Derived(generation, value));
+        return value;
+    }
+
+    @JsonIgnore
+    public TokenState getTokenState() {
+        return this.tokenState.get();
     }
 
     public String getGrantType() {
@@ -106,6 +169,10 @@ public class SharedVariableSchema {
         return waitLength;
     }
 
+    public long getStaleLength() {
+        return staleLength;
+    }
+
     public String getCertFilename() {
         return certFilename;
     }
@@ -143,87 +210,114 @@ public class SharedVariableSchema {
     }
 
     public long getExpiration() {
-        return expiration;
+        return this.tokenState.get().getExpiration();
     }
 
     public String getAccessToken() {
-        return accessToken;
+        return this.tokenState.get().getAccessToken();
     }
 
     public void setGrantType(final String grantType) {
         this.grantType = grantType;
+        this.changed();
     }
 
     public void setAuthIssuer(final String authIssuer) {
         this.authIssuer = authIssuer;
+        this.changed();
     }
 
     public void setAuthSubject(final String authSubject) {
         this.authSubject = authSubject;
+        this.changed();
     }
 
     public void setAuthAudience(final String authAudience) {
         this.authAudience = authAudience;
+        this.changed();
     }
 
     public void setIv(final String iv) {
         this.iv = iv;
+        this.changed();
     }
 
     public void setTokenTtl(final long tokenTtl) {
         this.tokenTtl = tokenTtl;
+        this.changed();
     }
 
     public void setWaitLength(final long waitLength) {
         this.waitLength = waitLength;
+        this.changed();
+    }
+
+    public void setStaleLength(final long staleLength) {
+        this.staleLength = staleLength;
+        this.changed();
     }
 
     public void setCertFilename(final String certFilename) {
         this.certFilename = certFilename;
+        this.changed();
     }
 
     public void setCertPassword(final char[] certPassword) {
         this.certPassword = certPassword;
+        this.changed();
     }
 
     public void setUsername(final String username) {
         this.username = username;
+        this.changed();
     }
 
     public void setPassword(final char[] password) {
         this.password = password;
+        this.changed();
     }
 
     public void setClientId(final String clientId) {
         this.clientId = clientId;
+        this.changed();
     }
 
     public void setScope(final String scope) {
         this.scope = scope;
+        this.changed();
     }
 
     public void setClientSecret(final char[] clientSecret) {
         this.clientSecret = clientSecret;
+        this.changed();
     }
 
     public void setResponseType(final String responseType) {
         this.responseType = responseType;
+        this.changed();
     }
 
+    @JsonProperty("expiration")
     public void setExpiration(final long expiration) {
-        this.expiration = expiration;
+        this.tokenState.updateAndGet(state -> state.withExpiration(expiration));
+        this.changed();
     }
 
+    @JsonProperty("accessToken")
     public void setAccessToken(final String accessToken) {
-        this.accessToken = accessToken;
+        this.tokenState.updateAndGet(state -> state.withAccessToken(accessToken));
+        this.changed();
     }
 
+    @JsonProperty("constructedJwt")
     public void setConstructedJwt(String constructedJwt) {
-        this.constructedJwt = constructedJwt;
+        this.tokenState.updateAndGet(state -> state.withConstructedJwt(constructedJwt));
+        this.changed();
     }
 
     public void setTokenTtlUnit(TtlUnit tokenTtlUnit) {
         this.tokenTtlUnit = tokenTtlUnit;
+        this.changed();
     }
 
     /**
@@ -239,4 +333,61 @@ public class SharedVariableSchema {
         final var newExpiration = System.currentTimeMillis() + ttlInMillis;
         this.setExpiration(newExpiration);
     }
+
+    /**
+     * Creates a private working copy of these variables.
+     * Token refreshes write to the copy and publish it once the whole response is processed.
+     *
+     * @return - a copy of these variables.
+     */
+    public SharedVariableSchema copy() {
+        return new SharedVariableSchema(this);
+    }
+
+    /**
+     * Publishes a working copy created by {@link #copy()}.
+     * The token state is swapped in a single write, so the new access token and its expiration become visible together.
+     *
+     * @param staged - the updated working copy.
+     */
+    public void publish(final SharedVariableSchema staged) {
+        this.copyFrom(staged);
+    }
+
+    private void copyFrom(final SharedVariableSchema other) {
+        this.grantType = other.grantType;
+        this.authIssuer = other.authIssuer;
+        this.authSubject = other.authSubject;
+        this.authAudience = other.authAudience;
+        this.iv = other.iv;
+        this.tokenTtl = other.tokenTtl;
+        this.tokenTtlUnit = other.tokenTtlUnit;
+        this.waitLength = other.waitLength;
+        this.staleLength = other.staleLength;
+        this.certFilename = other.certFilename;
+        this.certPassword = other.certPassword;
+        this.username = other.username;
+        this.password = other.password;
+        this.clientId = other.clientId;
+        this.scope = other.scope;
+        this.clientSecret = other.clientSecret;
+        this.responseType = other.responseType;
+        /* set last, the volatile write also publishes the plain fields above. */
+        this.tokenState.set(other.tokenState.get());
+        this.changed();
+    }
+
+    private void changed() {
+        this.generation = GENERATIONS.incrementAndGet();
+    }
+
+    private static final class Derived {
+        private final long generation;
+        private final Object value;
+
+        private Derived(final long generation, final Object value) {
+            this.generation = generation;
+            this.value = value;
+        }
+    }
 }
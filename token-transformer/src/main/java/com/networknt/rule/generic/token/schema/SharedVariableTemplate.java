@@ -0,0 +1,114 @@
+package com.networknt.rule.generic.token.schema;
+
+import java.util.ArrayList;
+
+/**
+ * A value containing !ref(sharedVariables.*) references, compiled into a list of literal and variable segments.
+ * Compiling happens once when the schema is loaded, resolving is then a plain concatenation of the segments.
+ */
+public final class SharedVariableTemplate {
+
+    private final String template;
+    private final Segment[] segments;
+
+    private SharedVariableTemplate(final String template, final Segment[] segments) {
+        this.template = template;
+        this.segments = segments;
+    }
+
+    /**
+     * Compiles a raw value into a template.
+     * Unknown variables do not fail the compile, they fail when the template is resolved just like before.
+     *
+     * @param template - the raw value that may contain !ref references.
+     * @return - the compiled template.
+     */
+    public static SharedVariableTemplate compile(final String template) {
+
+        if (template == null)
+            return new SharedVariableTemplate(null, new Segment[0]);
+
+        final var segments = new ArrayList<Segment>();
+        final var matcher = SharedVariableSchema.VARIABLE_PATTERN.matcher(template);
+        var literalStart = 0;
+
+        while (matcher.find()) {
+
+            if (matcher.start() > literalStart)
+                segments.add(new LiteralSegment(template.substring(literalStart, matcher.start())));
+
+            segments.add(variableSegment(matcher.group(1)));
+            literalStart = matcher.end();
+        }
+
+        if (literalStart < template.length())
+            segments.add(new LiteralSegment(template.substring(literalStart)));
+
+        return new SharedVariableTemplate(template, segments.toArray(new Segment[0]));
+    }
+
+    public String getTemplate() {
+        return template;
+    }
+
+    /**
+     * Resolves the template against the given shared variables.
+     *
+     * @param sharedVariableSchema - the shared variables used for !ref references.
+     * @return - the resolved value.
+     */
+    public String resolve(final SharedVariableSchema sharedVariableSchema) {
+
+        if (this.template == null)
+            return null;
+
+        switch (this.segments.length) {
+            case 0:
+                return "";
+            case 1:
+                return this.segments[0].resolve(sharedVariableSchema);
+            default:
+                final var builder = new StringBuilder(this.template.length() + 64);
+                for (final var segment : this.segments)
+                    builder.append(segment.resolve(sharedVariableSchema));
+
+                return builder.toString();
+        }
+    }
+
+    /**
+     * Maps a '!ref(prefix.fieldName)' variable to its precomputed accessor.
+     *
+     * @param variableName - the content of the !ref reference.
+     * @return - the segment for the variable.
+     */
+    private static Segment variableSegment(final String variableName) {
+        final var splitVariable = variableName.split("\\.");
+        final var fieldName = splitVariable.length > 1 ? splitVariable[1] : variableName;
+        final var field = SharedVariableField.find(fieldName);
+
+        if (field == null)
+            return sharedVariables -> {
+                throw new IllegalArgumentException("Unknown variable found: " + fieldName);
+            };
+
+        return field::read;
+    }
+
+    private interface Segment {
+        String resolve(SharedVariableSchema sharedVariableSchema);
+    }
+
+    private static final class LiteralSegment implements Segment {
+        private final String literal;
+
+        private LiteralSegment(final String literal) {
+            this.literal = literal;
+        }
+
+        @Override
+        public String resolve(final SharedVariableSchema sharedVariableSchema) {
+            return this.literal;
+        }
+    }
+}
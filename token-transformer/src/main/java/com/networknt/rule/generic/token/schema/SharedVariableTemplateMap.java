@@ -0,0 +1,57 @@
+package com.networknt.rule.generic.token.schema;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A map of header or body values compiled into templates, keyed by the original map keys.
+ */
+final class SharedVariableTemplateMap {
+
+    private final String[] keys;
+    private final SharedVariableTemplate[] templates;
+
+    private SharedVariableTemplateMap(final String[] keys, final SharedVariableTemplate[] templates) {
+        this.keys = keys;
+        this.templates = templates;
+    }
+
+    /**
+     * Compiles every value of the given map.
+     *
+     * @param map - the raw map.
+     * @return - the compiled map, or null if the raw map is null.
+     */
+    static SharedVariableTemplateMap compile(final Map<String, String> map) {
+
+        if (map == null)
+            return null;
+
+        final var keys = new String[map.size()];
+        final var templates = new SharedVariableTemplate[map.size()];
+        var index = 0;
+
+        for (final var entry : map.entrySet()) {
+            keys[index] = entry.getKey();
+            templates[index] = SharedVariableTemplate.compile(entry.getValue());
+            index++;
+        }
+
+        return new SharedVariableTemplateMap(keys, templates);
+    }
+
+    /**
+     * Resolves every template against the shared variables.
+     *
+     * @param sharedVariableSchema - the shared variables used for !ref references.
+     * @return - a new map holding the resolved values.
+     */
+    Map<String, String> resolve(final SharedVariableSchema sharedVariableSchema) {
+        final var resolved = new HashMap<String, String>((int) (this.keys.length / 0.75f) + 1);
+
+        for (int x = 0; x < this.keys.length; x++)
+            resolved.put(this.keys[x], this.templates[x].resolve(sharedVariableSchema));
+
+        return resolved;
+    }
+}
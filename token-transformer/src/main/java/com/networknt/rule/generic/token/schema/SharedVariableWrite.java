@@ -3,107 +3,68 @@ package com.networknt.rule.generic.token.schema;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.beans.BeanInfo;
-import java.beans.IntrospectionException;
-import java.beans.Introspector;
-import java.beans.PropertyDescriptor;
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
 import java.util.List;
 import java.util.Map;
+import java.util.function.BiConsumer;
 
 public abstract class SharedVariableWrite extends SharedVariableSchema {
 
     private static final Logger LOG = LoggerFactory.getLogger(SharedVariableWrite.class);
 
+    /* destinations without a !ref, or with an unknown field, are skipped. */
+    private static final BiConsumer<SharedVariableSchema, String> NO_OP_WRITER = (sharedVariableSchema, value) -> {};
+
     public static void writeToSharedVariables(final SharedVariableSchema sharedVariableSchema, final Map<String, Object> sourceData, final List<SourceSchema.SourceDestinationDefinition> sourceDestinationMapping) {
 
         if (sourceDestinationMapping == null || sourceDestinationMapping.isEmpty() || sourceData == null || sourceData.isEmpty())
             return;
 
-        BeanInfo beaninfo = null;
-        try {
-            beaninfo = Introspector.getBeanInfo(SharedVariableSchema.class);
-        } catch (IntrospectionException e) {
-            throw new RuntimeException(e);
-        }
-
         for (final var sourceEntry : sourceDestinationMapping) {
 
-            if (sourceData.get(sourceEntry.getSource()) instanceof String) {
-                final var sharedVariableValue = (String) sourceData.get(sourceEntry.getSource());
-                final var matcher = VARIABLE_PATTERN.matcher(sourceEntry.getDestination());
-
-                if (matcher.find()) {
-                    final var variableName = matcher.group(1);
-
-                    /* split prefix and suffix by the "." */
-                    final var variableNameArray = variableName.split("\\.");
-
-                    if (variableNameArray.length == 2)
-                        pushToSharedVariable(sharedVariableSchema, beaninfo, variableNameArray[1], sharedVariableValue);
-
-                    else throw new IllegalArgumentException("Invalid variable name provided: " + variableName);
-
-                }
-            }
+            if (sourceData.get(sourceEntry.getSource()) instanceof String)
+                sourceEntry.getDestinationWriter().accept(sharedVariableSchema, (String) sourceData.get(sourceEntry.getSource()));
         }
     }
 
-    private static void pushToSharedVariable(final SharedVariableSchema sharedVariableSchema, final BeanInfo beanInfo, final String sharedVariableName, final String newSharedVariableValue) {
+    /**
+     * Compiles a '!ref(sharedVariables.*)' destination into a writer for the matching sharedVariables field.
+     * Done once when the destination is configured, instead of matching and looking up the setter on every token response.
+     *
+     * @param destination - the configured destination.
+     * @return - writer that converts and stores a value in the destination field.
+     */
+    static BiConsumer<SharedVariableSchema, String> compileDestination(final String destination) {
 
-        LOG.trace("Attempting to set variable '{}' with the new value of '{}'", sharedVariableName, newSharedVariableValue);
+        if (destination == null)
+            return NO_OP_WRITER;
 
-        PropertyDescriptor[] propertyDescriptors = beanInfo.getPropertyDescriptors();
-        Method setterMethod;
+        final var matcher = VARIABLE_PATTERN.matcher(destination);
 
-        LOG.trace("Starting search for {} setter method via BeanInfo.", sharedVariableName);
-        for (PropertyDescriptor descriptor : propertyDescriptors) {
+        if (!matcher.find())
+            return NO_OP_WRITER;
 
-            if (descriptor.getName().equalsIgnoreCase(sharedVariableName)) {
-                setterMethod = descriptor.getWriteMethod(); // For Setter Method
+        final var variableName = matcher.group(1);
 
-                if (setterMethod != null) {
+        /* split prefix and suffix by the "." */
+        final var variableNameArray = variableName.split("\\.");
 
-                    LOG.trace("Found setter method '{}'", setterMethod.getName());
+        if (variableNameArray.length != 2)
+            return (sharedVariableSchema, value) -> {
+                throw new IllegalArgumentException("Invalid variable name provided: " + variableName);
+            };
 
-                    try {
-                        final var argTypes = setterMethod.getParameterTypes();
+        final var field = SharedVariableField.find(variableNameArray[1]);
 
-                        if (argTypes.length != 1) {
-                            LOG.error("Setter method '{}' has {} parameters instead of 1", setterMethod.getName(), argTypes.length);
-                            continue;
-                        }
-
-                        final var onlyArg = argTypes[0];
-
-                        /* string argument setter */
-                        if (onlyArg == String.class) {
-                            LOG.trace("Setting '{}' with a new string value of '{}'", sharedVariableName, newSharedVariableValue);
-                            setterMethod.invoke(sharedVariableSchema, newSharedVariableValue);
-                        /* char array argument setter */
-                        } else if (onlyArg.getName().equalsIgnoreCase("[C")) {
-                            LOG.trace("Setting '{}' with a new char array value of '{}'", sharedVariableName, newSharedVariableValue);
-                            setterMethod.invoke(sharedVariableSchema, newSharedVariableValue.toCharArray());
-
-                        /* long argument setter */
-                        } else if (onlyArg.getName().equalsIgnoreCase("long")) {
-                            LOG.trace("Setting '{}' with a new long value of '{}'", sharedVariableName, newSharedVariableValue);
-                            setterMethod.invoke(sharedVariableSchema, Long.parseLong(newSharedVariableValue));
-
-                        } else {
-                            LOG.error("Unknown variable name '{}' found, ignoring SharedVariable update.", sharedVariableName);
-                        }
+        if (field == null) {
+            LOG.error("Unknown variable name '{}' found, ignoring SharedVariable update.", variableNameArray[1]);
+            return NO_OP_WRITER;
+        }
 
-                    } catch (IllegalAccessException e) {
-                        throw new RuntimeException(e);
+        return (sharedVariableSchema, value) -> {
+            if (LOG.isTraceEnabled())
+                LOG.trace("Setting '{}' with a new value of '{}'", field.getFieldName(), value);
 
-                    } catch (InvocationTargetException e) {
-                        throw new RuntimeException(e);
-                    }
-                }
-            }
-        }
+            field.write(sharedVariableSchema, value);
+        };
     }
-
 }
@@ -4,13 +4,17 @@ import com.fasterxml.jackson.annotation.JsonAlias;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.annotation.JsonSetter;
 import com.fasterxml.jackson.annotation.Nulls;
+import com.fasterxml.jackson.core.JsonToken;
 import com.networknt.config.JsonMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
 import java.net.http.HttpResponse;
+import java.util.Base64;
 import java.util.HashMap;
 import java.util.List;
+import java.util.function.BiConsumer;
 
 public class SourceSchema extends SharedVariableWrite {
     private static final Logger LOG = LoggerFactory.getLogger(SourceSchema.class);
@@ -71,6 +75,15 @@ public class SourceSchema extends SharedVariableWrite {
             SharedVariableWrite.writeToSharedVariables(sharedVariableSchema, headerMap, this.headers);
     }
 
+    private void writeExpirationToSharedVariables(final SharedVariableSchema sharedVariableSchema, final String responseExpiration) {
+
+        if (responseExpiration != null) {
+            final var expiration = Long.parseLong(responseExpiration);
+            sharedVariableSchema.setExpiration(this.expirationSchema.ttlUnit.unitToMillis(expiration));
+
+        } else LOG.error("Could not find '{}' contained in the body of the token response.", this.expirationSchema.field);
+    }
+
     private void writeExpirationToSharedVariables(final SharedVariableSchema sharedVariableSchema, final HttpResponse<?> response) {
 
         switch (this.expirationSchema.location) {
@@ -87,14 +100,8 @@ public class SourceSchema extends SharedVariableWrite {
                 break;
 
             case BODY:
-                final var bodyMap = JsonMapper.string2Map(response.body().toString());
-
-                if (bodyMap.containsKey(this.expirationSchema.field)) {
-                    final var responseExpiration = Long.parseLong(String.valueOf(bodyMap.get(this.expirationSchema.field)));
-                    sharedVariableSchema.setExpiration(this.expirationSchema.ttlUnit.unitToMillis(responseExpiration));
-
-                } else LOG.error("Could not find '{}' contained in the body of the token response.", this.expirationSchema.field);
-
+            case JWT:
+                /* read together with the body sources in writeBodyToSharedVariables. */
                 break;
             default:
                 throw new IllegalStateException("Invalid location configured in ./source/expirationSchema: '" + this.expirationSchema.location + "'.");
@@ -106,8 +113,8 @@ public class SourceSchema extends SharedVariableWrite {
         /* write headers values from response to sharedVariables */
         this.writeHeadersToSharedVariables(sharedVariableSchema, response);
 
-        /* write body values from response to sharedVariables */
-        this.writeJsonStringToSharedVariables(sharedVariableSchema, response.body().toString(), this.body);
+        /* write body values (and the expiration if it is in the body) from response to sharedVariables */
+        this.writeBodyToSharedVariables(sharedVariableSchema, response.body().toString());
 
         /* if an expiration schema is specified, grab it from the response and convert it to milliseconds. */
         if (this.expirationSchema != null)
@@ -115,6 +122,123 @@ public class SourceSchema extends SharedVariableWrite {
 
     }
 
+    /**
+     * Reads the configured body sources and the body expiration field from the token response in one streaming pass.
+     * Only top-level fields are looked at, nested objects and arrays (id_tokens, user profiles, etc.) are skipped without being parsed into memory.
+     *
+     * @param sharedVariableSchema - object holding our variables.
+     * @param jsonString - the token response body.
+     */
+    private void writeBodyToSharedVariables(final SharedVariableSchema sharedVariableSchema, final String jsonString) {
+        final var expirationField = this.expirationSchema == null ? null : this.expirationSchema.getBodyField();
+
+        if ((this.body == null || this.body.isEmpty()) && expirationField == null)
+            return;
+
+        final var dataSourceMap = new HashMap<String, Object>();
+        String responseExpiration = null;
+
+        try (final var parser = JsonMapper.objectMapper.getFactory().createParser(jsonString)) {
+
+            if (parser.nextToken() != JsonToken.START_OBJECT)
+                throw new IllegalStateException("The token response body is not a json object.");
+
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                final var fieldName = parser.currentName();
+                final var valueToken = parser.nextToken();
+
+                if (valueToken.isStructStart()) {
+                    parser.skipChildren();
+                    continue;
+                }
+
+                if (fieldName.equals(expirationField))
+                    responseExpiration = parser.getText();
+
+                if (valueToken == JsonToken.VALUE_STRING && this.isBodySource(fieldName))
+                    dataSourceMap.put(fieldName, parser.getText());
+            }
+
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not parse the token response body.", e);
+        }
+
+        SharedVariableWrite.writeToSharedVariables(sharedVariableSchema, dataSourceMap, this.body);
+
+        if (expirationField == null)
+            return;
+
+        if (this.expirationSchema.location == ExpirationSchema.ExpireLocation.JWT)
+            this.writeJwtExpirationToSharedVariables(sharedVariableSchema, responseExpiration);
+
+        else this.writeExpirationToSharedVariables(sharedVariableSchema, responseExpiration);
+    }
+
+    private void writeJwtExpirationToSharedVariables(final SharedVariableSchema sharedVariableSchema, final String jwt) {
+        final var exp = jwt == null ? null : readJwtExpiration(jwt);
+
+        /* exp is always in seconds since the epoch, whatever ttlUnit says. */
+        if (exp != null)
+            sharedVariableSchema.setExpiration(TtlUnit.SECOND.unitToMillis(exp));
+
+        else LOG.error("Could not read the exp claim of the jwt in '{}' of the token response.", this.expirationSchema.getBodyField());
+    }
+
+    /**
+     * Reads the exp claim of a jwt without verifying it. Only the payload is decoded, and only its top-level fields are looked at.
+     *
+     * @param jwt - the jwt.
+     * @return - the exp claim, or null if the value is not a jwt or has no numeric exp claim.
+     */
+    static Long readJwtExpiration(final String jwt) {
+        final var payloadStart = jwt.indexOf('.') + 1;
+        final var payloadEnd = jwt.indexOf('.', payloadStart);
+
+        if (payloadStart == 0 || payloadEnd < 0)
+            return null;
+
+        final byte[] payload;
+        try {
+            payload = Base64.getUrlDecoder().decode(jwt.substring(payloadStart, payloadEnd));
+
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+
+        try (final var parser = JsonMapper.objectMapper.getFactory().createParser(payload)) {
+
+            if (parser.nextToken() != JsonToken.START_OBJECT)
+                return null;
+
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                final var fieldName = parser.currentName();
+                final var valueToken = parser.nextToken();
+
+                if (valueToken.isStructStart())
+                    parser.skipChildren();
+
+                else if (fieldName.equals("exp") && valueToken.isNumeric())
+                    return parser.getLongValue();
+            }
+
+        } catch (IOException e) {
+            LOG.trace("Could not parse the jwt payload.", e);
+        }
+        return null;
+    }
+
+    private boolean isBodySource(final String fieldName) {
+
+        if (this.body == null)
+            return false;
+
+        for (final var sourceEntry : this.body)
+            if (fieldName.equals(sourceEntry.getSource()))
+                return true;
+
+        return false;
+    }
+
     /**
      * Overwrites shared variable values with new ones based on source-destinations mappings.
      *
@@ -129,6 +253,8 @@ public class SourceSchema extends SharedVariableWrite {
 
     public static class ExpirationSchema {
 
+        private static final String DEFAULT_JWT_FIELD = "access_token";
+
         public enum ExpireLocation {
 
             @JsonProperty("HEADER")
@@ -137,7 +263,12 @@ public class SourceSchema extends SharedVariableWrite {
 
             @JsonProperty("BODY")
             @JsonAlias({"body"})
-            BODY
+            BODY,
+
+            /* the exp claim of a jwt in the response body. */
+            @JsonProperty("JWT")
+            @JsonAlias({"jwt", "Jwt"})
+            JWT
         }
 
         @JsonProperty("location")
@@ -161,6 +292,20 @@ public class SourceSchema extends SharedVariableWrite {
         public TtlUnit getTtlUnit() {
             return ttlUnit;
         }
+
+        /**
+         * @return - the body field read for the expiration, or null if the expiration is not read from the body.
+         */
+        private String getBodyField() {
+
+            if (this.location == ExpireLocation.BODY)
+                return this.field;
+
+            if (this.location == ExpireLocation.JWT)
+                return this.field == null ? DEFAULT_JWT_FIELD : this.field;
+
+            return null;
+        }
     }
 
     public static class SourceDestinationDefinition {
@@ -171,6 +316,9 @@ public class SourceSchema extends SharedVariableWrite {
         @JsonProperty("destination")
         private String destination;
 
+        /* destination compiled into a field writer when it is set. */
+        private volatile BiConsumer<SharedVariableSchema, String> destinationWriter;
+
         public String getSource() {
             return source;
         }
@@ -185,6 +333,15 @@ public class SourceSchema extends SharedVariableWrite {
 
         public void setDestination(String destination) {
             this.destination = destination;
+            this.destinationWriter = SharedVariableWrite.compileDestination(destination);
+        }
+
+        public BiConsumer<SharedVariableSchema, String> getDestinationWriter() {
+
+            if (this.destinationWriter == null)
+                this.destinationWriter = SharedVariableWrite.compileDestination(this.destination);
+
+            return this.destinationWriter;
         }
     }
 }
@@ -0,0 +1,88 @@
+package com.networknt.rule.generic.token.schema;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.Map;
+
+/**
+ * Makes a schema keep one token per cache key instead of a single token, where the key is read from the in-flight request.
+ * Used when the same token request is made on behalf of many tenants or clients.
+ */
+public class TokenCacheKeySchema {
+
+    public static final String REQUEST_HEADERS = "requestHeaders";
+    public static final String REQUEST_PATH = "requestPath";
+
+    @JsonProperty("header")
+    private String header;
+
+    @JsonProperty("pathSegment")
+    private int pathSegment;
+
+    @JsonProperty("sharedVariable")
+    private String sharedVariable;
+
+    @JsonProperty("maxEntries")
+    private int maxEntries = 1000;
+
+    public String getHeader() {
+        return header;
+    }
+
+    public int getPathSegment() {
+        return pathSegment;
+    }
+
+    public String getSharedVariable() {
+        return sharedVariable;
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    /**
+     * Reads the cache key from the request. The header is matched case-insensitively, the path segment is 1-based.
+     * A header takes precedence over a path segment when both are configured.
+     *
+     * @param objMap - the rule engine object map of the in-flight request.
+     * @return - the cache key, or null if the request does not have one.
+     */
+    public String resolve(final Map<String, Object> objMap) {
+
+        if (objMap == null)
+            return null;
+
+        if (this.header != null && objMap.get(REQUEST_HEADERS) instanceof Map) {
+            final var value = findHeader((Map<?, ?>) objMap.get(REQUEST_HEADERS), this.header);
+
+            if (value != null && !value.isBlank())
+                return value;
+        }
+
+        if (this.pathSegment > 0 && objMap.get(REQUEST_PATH) instanceof String) {
+            var segment = 0;
+
+            for (final var part : ((String) objMap.get(REQUEST_PATH)).split("/")) {
+
+                if (!part.isEmpty() && ++segment == this.pathSegment)
+                    return part;
+            }
+        }
+
+        return null;
+    }
+
+    private static String findHeader(final Map<?, ?> headers, final String name) {
+        final var value = headers.get(name);
+
+        if (value != null)
+            return value.toString();
+
+        for (final var entry : headers.entrySet())
+            if (entry.getValue() != null && name.equalsIgnoreCase(String.valueOf(entry.getKey())))
+                return entry.getValue().toString();
+
+        return null;
+    }
+}
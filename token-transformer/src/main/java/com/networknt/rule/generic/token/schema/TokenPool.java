@@ -0,0 +1,92 @@
+package com.networknt.rule.generic.token.schema;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Predicate;
+
+/**
+ * The member schemas of a schema with a pool, each holding its own token.
+ * Members are picked without locking, either in turn or by the longest time since they were last handed out.
+ */
+public class TokenPool {
+
+    private final TokenSchema[] members;
+    private final TokenPoolSchema.Strategy strategy;
+    private final AtomicInteger next = new AtomicInteger();
+    private final AtomicLong uses = new AtomicLong();
+    private final AtomicLongArray lastUsed;
+
+    /**
+     * @param schema - the schema the members are copied from.
+     * @param poolSchema - the pool configuration.
+     */
+    TokenPool(final TokenSchema schema, final TokenPoolSchema poolSchema) {
+        this.members = new TokenSchema[Math.max(1, poolSchema.getSize())];
+        this.strategy = poolSchema.getStrategy();
+        this.lastUsed = new AtomicLongArray(this.members.length);
+
+        for (int x = 0; x < this.members.length; x++)
+            this.members[x] = schema.forPoolMember(x);
+    }
+
+    /**
+     * @return - number of members in the pool.
+     */
+    public int size() {
+        return this.members.length;
+    }
+
+    /**
+     * @param index - index of the member.
+     * @return - the member schema.
+     */
+    public TokenSchema getMember(final int index) {
+        return this.members[index];
+    }
+
+    /**
+     * Picks the next member according to the pool strategy, whatever the state of its token.
+     *
+     * @return - the next member.
+     */
+    public TokenSchema next() {
+        return this.next(member -> true);
+    }
+
+    /**
+     * Picks the next member according to the pool strategy among the members that can be used.
+     *
+     * @param usable - tests whether a member can be handed out.
+     * @return - the next usable member, or null if there is none.
+     */
+    public TokenSchema next(final Predicate<TokenSchema> usable) {
+
+        if (this.strategy == TokenPoolSchema.Strategy.LEAST_RECENTLY_USED)
+            return this.leastRecentlyUsed(usable);
+
+        final var start = Math.floorMod(this.next.getAndIncrement(), this.members.length);
+
+        for (int x = 0; x < this.members.length; x++) {
+            final var member = this.members[(start + x) % this.members.length];
+
+            if (usable.test(member))
+                return member;
+        }
+        return null;
+    }
+
+    private TokenSchema leastRecentlyUsed(final Predicate<TokenSchema> usable) {
+        var index = -1;
+
+        for (int x = 0; x < this.members.length; x++)
+            if ((index == -1 || this.lastUsed.get(x) < this.lastUsed.get(index)) && usable.test(this.members[x]))
+                index = x;
+
+        if (index == -1)
+            return null;
+
+        this.lastUsed.set(index, this.uses.incrementAndGet());
+        return this.members[index];
+    }
+}
@@ -0,0 +1,40 @@
+package com.networknt.rule.generic.token.schema;
+
+import com.fasterxml.jackson.annotation.JsonAlias;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonSetter;
+import com.fasterxml.jackson.annotation.Nulls;
+
+/**
+ * Makes a schema keep several tokens at once, each requested and refreshed on its own, and hand them out in turn.
+ * Used for token services or upstream APIs that rate-limit per token.
+ */
+public class TokenPoolSchema {
+
+    public enum Strategy {
+
+        @JsonProperty("ROUND_ROBIN")
+        @JsonAlias({"round_robin", "roundRobin"})
+        ROUND_ROBIN,
+
+        /* the token that has gone unused the longest. */
+        @JsonProperty("LEAST_RECENTLY_USED")
+        @JsonAlias({"least_recently_used", "leastRecentlyUsed", "LRU", "lru"})
+        LEAST_RECENTLY_USED
+    }
+
+    @JsonProperty("size")
+    private int size;
+
+    @JsonProperty("strategy")
+    @JsonSetter(nulls = Nulls.SKIP)
+    private Strategy strategy = Strategy.ROUND_ROBIN;
+
+    public int getSize() {
+        return size;
+    }
+
+    public Strategy getStrategy() {
+        return strategy;
+    }
+}
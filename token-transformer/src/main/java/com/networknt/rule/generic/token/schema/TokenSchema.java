@@ -1,7 +1,10 @@
 package com.networknt.rule.generic.token.schema;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
+import java.net.URI;
+
 public class TokenSchema {
     @JsonProperty("sharedVariables")
     private SharedVariableSchema sharedVariables;
@@ -15,6 +18,24 @@ public class TokenSchema {
     @JsonProperty("update")
     private UpdateSchema tokenUpdate;
 
+    @JsonProperty("cacheKey")
+    private TokenCacheKeySchema cacheKey;
+
+    @JsonProperty("pool")
+    private TokenPoolSchema pool;
+
+    /* key this schema holds the token of, only set on the per-key copies of a schema with a cacheKey. */
+    private String cacheKeyValue;
+
+    /* index of this schema in the pool it belongs to, -1 if it is not a pool member. */
+    private int poolMember = -1;
+
+    /* members of the pool, created on first use. */
+    private volatile TokenPool tokenPool;
+
+    /* hash of the schema definition in the config, set when the config is loaded. */
+    private String fingerprint;
+
     public SharedVariableSchema getSharedVariables() {
         return sharedVariables;
     }
@@ -30,4 +51,156 @@ public class TokenSchema {
     public UpdateSchema getTokenUpdate() {
         return tokenUpdate;
     }
+
+    public TokenCacheKeySchema getCacheKey() {
+        return cacheKey;
+    }
+
+    public TokenPoolSchema getPool() {
+        return pool;
+    }
+
+    @JsonIgnore
+    public String getCacheKeyValue() {
+        return cacheKeyValue;
+    }
+
+    @JsonIgnore
+    public int getPoolMember() {
+        return poolMember;
+    }
+
+    @JsonIgnore
+    public String getFingerprint() {
+        return fingerprint;
+    }
+
+    @JsonIgnore
+    public void setFingerprint(final String fingerprint) {
+        this.fingerprint = fingerprint;
+    }
+
+    /**
+     * @return - true for the per-key and pool member copies of a configured schema.
+     */
+    @JsonIgnore
+    public boolean isCopy() {
+        return this.cacheKeyValue != null || this.poolMember >= 0;
+    }
+
+    /**
+     * Gets the members of the pool of this schema, creating them on first use.
+     *
+     * @return - the pool, or null if this schema has no pool or is a pool member itself.
+     */
+    @JsonIgnore
+    public TokenPool getTokenPool() {
+
+        if (this.pool == null || this.pool.getSize() <= 1 || this.poolMember >= 0)
+            return null;
+
+        var tokenPool = this.tokenPool;
+
+        if (tokenPool == null) {
+            synchronized (this) {
+                tokenPool = this.tokenPool;
+
+                if (tokenPool == null) {
+                    tokenPool = new TokenPool(this, this.pool);
+                    this.tokenPool = tokenPool;
+                }
+            }
+        }
+        return tokenPool;
+    }
+
+    /**
+     * Checks that the schema has everything a token request needs, so a broken schema is found before the first request uses it.
+     *
+     * @throws IllegalArgumentException - describing the first problem found.
+     */
+    public void validate() {
+
+        if (this.sharedVariables == null)
+            throw new IllegalArgumentException("sharedVariables section is missing.");
+
+        if (this.tokenRequest == null)
+            throw new IllegalArgumentException("request section is missing.");
+
+        if (this.tokenRequest.getUrl() == null || this.tokenRequest.getUrl().isBlank())
+            throw new IllegalArgumentException("request url is missing.");
+
+        final var uri = URI.create(this.tokenRequest.getUrl());
+
+        if (uri.getScheme() == null || uri.getHost() == null)
+            throw new IllegalArgumentException("request url '" + this.tokenRequest.getUrl() + "' is not absolute.");
+
+        if (this.tokenSource == null)
+            throw new IllegalArgumentException("source section is missing.");
+
+        if (this.tokenUpdate == null)
+            throw new IllegalArgumentException("update section is missing.");
+
+        if (this.cacheKey != null) {
+
+            if (this.cacheKey.getHeader() == null && this.cacheKey.getPathSegment() <= 0)
+                throw new IllegalArgumentException("cacheKey needs a header or a pathSegment.");
+
+            if (this.cacheKey.getSharedVariable() != null && SharedVariableField.find(this.cacheKey.getSharedVariable()) == null)
+                throw new IllegalArgumentException("Cache key shared variable '" + this.cacheKey.getSharedVariable() + "' does not exist.");
+        }
+    }
+
+    /**
+     * Creates the copy of this schema that holds the token of one cache key.
+     * The copy shares the request, source and update sections, but starts with its own shared variables without a token.
+     * If the cacheKey names a sharedVariable, the key is written to it so it can be used in the token request.
+     *
+     * @param key - the cache key.
+     * @return - a schema holding the token of the key.
+     */
+    public TokenSchema forCacheKey(final String key) {
+        final var keyed = this.copyWithoutToken();
+        keyed.cacheKeyValue = key;
+
+        if (this.cacheKey.getSharedVariable() != null) {
+            final var field = SharedVariableField.find(this.cacheKey.getSharedVariable());
+
+            if (field == null)
+                throw new IllegalArgumentException("Cache key shared variable '" + this.cacheKey.getSharedVariable() + "' does not exist.");
+
+            field.write(keyed.sharedVariables, key);
+        }
+
+        return keyed;
+    }
+
+    /**
+     * Creates a member of the pool of this schema. Like a per-key copy, it shares everything but the shared variables.
+     *
+     * @param index - index of the member in the pool.
+     * @return - a schema holding the token of the member.
+     */
+    TokenSchema forPoolMember(final int index) {
+        final var member = this.copyWithoutToken();
+        member.cacheKeyValue = this.cacheKeyValue;
+        member.poolMember = index;
+        return member;
+    }
+
+    private TokenSchema copyWithoutToken() {
+        final var copy = new TokenSchema();
+        copy.tokenRequest = this.tokenRequest;
+        copy.tokenSource = this.tokenSource;
+        copy.tokenUpdate = this.tokenUpdate;
+        copy.cacheKey = this.cacheKey;
+        copy.pool = this.pool;
+        copy.fingerprint = this.fingerprint;
+
+        copy.sharedVariables = this.sharedVariables.copy();
+        copy.sharedVariables.setAccessToken(null);
+        copy.sharedVariables.setExpiration(0L);
+        copy.sharedVariables.setConstructedJwt(null);
+        return copy;
+    }
 }
@@ -0,0 +1,45 @@
+package com.networknt.rule.generic.token.schema;
+
+/**
+ * Immutable snapshot of the cached token of a schema.
+ * The access token, its expiration and the jwt used to request it always change together,
+ * so they are published as one object and readers never see a mix of an old and a new token.
+ */
+public final class TokenState {
+
+    public static final TokenState EMPTY = new TokenState(null, 0L, null);
+
+    private final String accessToken;
+    private final long expiration;
+    private final String constructedJwt;
+
+    public TokenState(final String accessToken, final long expiration, final String constructedJwt) {
+        this.accessToken = accessToken;
+        this.expiration = expiration;
+        this.constructedJwt = constructedJwt;
+    }
+
+    public String getAccessToken() {
+        return accessToken;
+    }
+
+    public long getExpiration() {
+        return expiration;
+    }
+
+    public String getConstructedJwt() {
+        return constructedJwt;
+    }
+
+    public TokenState withAccessToken(final String accessToken) {
+        return new TokenState(accessToken, this.expiration, this.constructedJwt);
+    }
+
+    public TokenState withExpiration(final long expiration) {
+        return new TokenState(this.accessToken, expiration, this.constructedJwt);
+    }
+
+    public TokenState withConstructedJwt(final String constructedJwt) {
+        return new TokenState(this.accessToken, this.expiration, constructedJwt);
+    }
+}
@@ -7,6 +7,7 @@ import com.fasterxml.jackson.annotation.Nulls;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -20,6 +21,10 @@ public class UpdateSchema extends SharedVariableRead {
     @JsonProperty("body")
     protected Map<String, String> body;
 
+    /* headers and body compiled into templates when they are set. */
+    private volatile SharedVariableTemplateMap compiledHeaders;
+    private volatile SharedVariableTemplateMap compiledBody;
+
     @JsonProperty("updateExpirationFromTtl")
     @JsonSetter(nulls = Nulls.SKIP)
     private boolean updateExpirationFromTtl = true;
@@ -29,39 +34,65 @@ public class UpdateSchema extends SharedVariableRead {
     }
     public void setHeaders(Map<String, String> headers) {
         this.headers = headers;
+        this.compiledHeaders = SharedVariableTemplateMap.compile(headers);
     }
     public Map<String, String> getBody() {
         return body;
     }
     public void setBody(Map<String, String> body) {
         this.body = body;
+        this.compiledBody = SharedVariableTemplateMap.compile(body);
     }
 
     public boolean isUpdateExpirationFromTtl() {
         return updateExpirationFromTtl;
     }
 
+    /**
+     * Resolves the update headers against the shared variables.
+     * The result is kept on the shared variables and reused until they change, so it is read-only.
+     * Per-key and pool member copies sharing this schema each keep their own result.
+     *
+     * @param sharedVariableSchema - the shared variables used for !ref references.
+     * @return - the resolved headers.
+     */
     public Map<String, String> getResolvedHeaders(final SharedVariableSchema sharedVariableSchema) {
 
         if (this.headers == null) {
             LOG.trace("No headers defined in update schema.");
-            return  new HashMap<>();
+            return new HashMap<>();
         }
 
-        final var resolvedHeaders = new HashMap<>(this.headers);
-        SharedVariableRead.updateMapFromSharedVariables(resolvedHeaders, sharedVariableSchema);
-        return resolvedHeaders;
+        var compiled = this.compiledHeaders;
+
+        if (compiled == null)
+            this.compiledHeaders = compiled = SharedVariableTemplateMap.compile(this.headers);
+
+        final var templates = compiled;
+        return sharedVariableSchema.getDerived(templates, variables -> Collections.unmodifiableMap(templates.resolve(variables)));
     }
 
+    /**
+     * Resolves the update body against the shared variables.
+     * The result is kept on the shared variables and reused until they change, so it is read-only.
+     * Per-key and pool member copies sharing this schema each keep their own result.
+     *
+     * @param sharedVariableSchema - the shared variables used for !ref references.
+     * @return - the resolved body.
+     */
     public Map<String, String> getResolvedBody(final SharedVariableSchema sharedVariableSchema) {
 
         if (this.body == null) {
             LOG.trace("No body defined in update schema.");
-            return  new HashMap<>();
+            return new HashMap<>();
         }
 
-        final var resolvedBody = new HashMap<>(this.body);
-        SharedVariableRead.updateMapFromSharedVariables(resolvedBody, sharedVariableSchema);
-        return resolvedBody;
+        var compiled = this.compiledBody;
+
+        if (compiled == null)
+            this.compiledBody = compiled = SharedVariableTemplateMap.compile(this.body);
+
+        final var templates = compiled;
+        return sharedVariableSchema.getDerived(templates, variables -> Collections.unmodifiableMap(templates.resolve(variables)));
     }
 }
@@ -5,9 +5,13 @@ import com.fasterxml.jackson.annotation.JsonSetter;
 import com.fasterxml.jackson.annotation.Nulls;
 import com.networknt.rule.generic.token.schema.TtlUnit;
 import com.networknt.rule.generic.token.schema.cert.KeyStoreSchema;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 public class JWTSchema {
 
+    private static final Logger LOG = LoggerFactory.getLogger(JWTSchema.class);
+
     @JsonProperty("jwtTtl")
     private long jwtTtl;
 
@@ -27,6 +31,20 @@ public class JWTSchema {
     @JsonProperty("jwtBody")
     private JwtPartialSchema jwtBody;
 
+    @JsonProperty("assertionPoolSize")
+    private int assertionPoolSize;
+
+    @JsonProperty("assertionPoolMargin")
+    @JsonSetter(nulls = Nulls.SKIP)
+    private long assertionPoolMargin = 2000L;
+
+    @JsonProperty("assertionPoolMaxAge")
+    @JsonSetter(nulls = Nulls.SKIP)
+    private long assertionPoolMaxAge = 60000L;
+
+    /* header including the 'alg' of the configured algorithm, built on first use. */
+    private volatile JwtPartialSchema signedJwtHeader;
+
     public long getJwtTtl() {
         return jwtTtl;
     }
@@ -50,4 +68,68 @@ public class JWTSchema {
     public JwtPartialSchema getJwtBody() {
         return jwtBody;
     }
+
+    public int getAssertionPoolSize() {
+        return assertionPoolSize;
+    }
+
+    public long getAssertionPoolMargin() {
+        return assertionPoolMargin;
+    }
+
+    public long getAssertionPoolMaxAge() {
+        return assertionPoolMaxAge;
+    }
+
+    /**
+     * @return - true if the header or body has expiry fields, meaning assertions built from this schema expire.
+     */
+    public boolean hasExpiryFields() {
+        return hasExpiryFields(this.jwtHeader) || hasExpiryFields(this.jwtBody);
+    }
+
+    private static boolean hasExpiryFields(final JwtPartialSchema schema) {
+        return schema != null && schema.getExpiryFields() != null && !schema.getExpiryFields().isEmpty();
+    }
+
+    /**
+     * @return - the algorithm with first-class support matching the configured algorithm, or null.
+     */
+    public JwtAlgorithm getJwtAlgorithm() {
+        return JwtAlgorithm.find(this.algorithm);
+    }
+
+    /**
+     * @return - the JCA name of the configured algorithm, used with Signature.getInstance.
+     */
+    public String getSignatureAlgorithm() {
+        final var jwtAlgorithm = this.getJwtAlgorithm();
+        return jwtAlgorithm == null ? this.algorithm : jwtAlgorithm.getJcaName();
+    }
+
+    /**
+     * Gets the header used for signing. When the configured header has no 'alg' field, the JOSE name of the algorithm is added.
+     * A configured 'alg' is always kept as is.
+     *
+     * @return - the header used for signing.
+     */
+    public JwtPartialSchema getSignedJwtHeader() {
+        var header = this.signedJwtHeader;
+
+        if (header == null) {
+            final var jwtAlgorithm = this.getJwtAlgorithm();
+            final var hasAlg = this.jwtHeader != null && this.jwtHeader.getStaticFields() != null && this.jwtHeader.getStaticFields().containsKey("alg");
+
+            if (hasAlg && jwtAlgorithm != null && !jwtAlgorithm.getJoseName().equals(this.jwtHeader.getStaticFields().get("alg")))
+                LOG.warn("Configured jwt header alg '{}' does not match the algorithm '{}' ({}).", this.jwtHeader.getStaticFields().get("alg"), this.algorithm, jwtAlgorithm.getJoseName());
+
+            if (hasAlg || jwtAlgorithm == null)
+                header = this.jwtHeader == null ? new JwtPartialSchema() : this.jwtHeader;
+
+            else header = JwtPartialSchema.withStaticField(this.jwtHeader, "alg", jwtAlgorithm.getJoseName());
+
+            this.signedJwtHeader = header;
+        }
+        return header;
+    }
 }
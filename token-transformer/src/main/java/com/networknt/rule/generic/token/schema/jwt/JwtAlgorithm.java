@@ -0,0 +1,110 @@
+package com.networknt.rule.generic.token.schema.jwt;
+
+import java.util.Locale;
+
+/**
+ * JWS algorithms with first-class support for client assertions.
+ * Maps the JOSE 'alg' name to the JCA signature algorithm, and converts the JCA signature output to the JOSE format where they differ.
+ */
+public enum JwtAlgorithm {
+
+    RS256("RS256", "SHA256withRSA", 0),
+    RS384("RS384", "SHA384withRSA", 0),
+    RS512("RS512", "SHA512withRSA", 0),
+    ES256("ES256", "SHA256withECDSA", 32),
+    ES384("ES384", "SHA384withECDSA", 48),
+    ES512("ES512", "SHA512withECDSA", 66),
+    ED25519("EdDSA", "Ed25519", 0);
+
+    private final String joseName;
+    private final String jcaName;
+
+    /* length of each of r and s in the JOSE signature of an ECDSA algorithm, 0 when the JCA output is used as is. */
+    private final int ecdsaPartLength;
+
+    JwtAlgorithm(final String joseName, final String jcaName, final int ecdsaPartLength) {
+        this.joseName = joseName;
+        this.jcaName = jcaName;
+        this.ecdsaPartLength = ecdsaPartLength;
+    }
+
+    public String getJoseName() {
+        return joseName;
+    }
+
+    public String getJcaName() {
+        return jcaName;
+    }
+
+    /**
+     * Finds the algorithm for a configured name. Both the JOSE name (i.e. ES256) and the JCA name (i.e. SHA256withECDSA) are accepted.
+     *
+     * @param algorithm - the configured algorithm.
+     * @return - the matching algorithm, or null if it is not one with first-class support.
+     */
+    public static JwtAlgorithm find(final String algorithm) {
+
+        if (algorithm == null)
+            return null;
+
+        for (final var value : values())
+            if (value.joseName.equalsIgnoreCase(algorithm) || value.jcaName.equalsIgnoreCase(algorithm) || value.name().equals(algorithm.toUpperCase(Locale.ROOT)))
+                return value;
+
+        return null;
+    }
+
+    /**
+     * Converts a signature produced by the JCA engine to the JWS format.
+     * ECDSA engines produce an ASN.1 DER sequence of r and s, JWS expects r and s as fixed length big-endian values back to back.
+     *
+     * @param signature - the JCA signature.
+     * @return - the JWS signature.
+     */
+    public byte[] toJose(final byte[] signature) {
+
+        if (this.ecdsaPartLength == 0)
+            return signature;
+
+        /* SEQUENCE { INTEGER r, INTEGER s } */
+        if (signature.length < 8 || signature[0] != 0x30)
+            throw new IllegalArgumentException("Invalid ECDSA signature format.");
+
+        var offset = 2;
+
+        /* long form length, only one length byte is possible for the supported curves. */
+        if ((signature[1] & 0x80) != 0)
+            offset += signature[1] & 0x7f;
+
+        final var jose = new byte[this.ecdsaPartLength * 2];
+        offset = this.copyInteger(signature, offset, jose, 0);
+        this.copyInteger(signature, offset, jose, this.ecdsaPartLength);
+        return jose;
+    }
+
+    /**
+     * Copies one DER integer into its fixed length slot, dropping the sign byte and left padding with zeros.
+     *
+     * @return - the offset after the integer.
+     */
+    private int copyInteger(final byte[] der, final int offset, final byte[] jose, final int joseOffset) {
+
+        if (der[offset] != 0x02)
+            throw new IllegalArgumentException("Invalid ECDSA signature format.");
+
+        var length = der[offset + 1] & 0xff;
+        var start = offset + 2;
+        final var end = start + length;
+
+        while (length > this.ecdsaPartLength && der[start] == 0) {
+            start++;
+            length--;
+        }
+
+        if (length > this.ecdsaPartLength)
+            throw new IllegalArgumentException("Invalid ECDSA signature format.");
+
+        System.arraycopy(der, start, jose, joseOffset + this.ecdsaPartLength - length, length);
+        return end;
+    }
+}
@@ -1,11 +1,15 @@
 package com.networknt.rule.generic.token.schema.jwt;
 
+import com.networknt.config.JsonMapper;
 import com.networknt.rule.generic.token.schema.TtlUnit;
 import com.networknt.utility.UuidUtil;
+import org.apache.commons.codec.binary.Base64;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -16,6 +20,9 @@ public class JwtPartialSchema {
     private List<String> currentTimeFields;
     private List<String> expiryFields;
 
+    /* the static part of this jwt section, encoded on first use. */
+    private volatile EncodedPart encodedPart;
+
     public Map<String, String> getStaticFields() {
         return staticFields;
     }
@@ -32,6 +39,31 @@ public class JwtPartialSchema {
         return expiryFields;
     }
 
+    /**
+     * Copies a jwt section and adds a static field to it.
+     *
+     * @param schema - the section to copy, may be null.
+     * @param name - name of the static field.
+     * @param value - value of the static field.
+     * @return - the new section.
+     */
+    static JwtPartialSchema withStaticField(final JwtPartialSchema schema, final String name, final String value) {
+        final var copy = new JwtPartialSchema();
+        copy.staticFields = new LinkedHashMap<>();
+        copy.staticFields.put(name, value);
+
+        if (schema != null) {
+
+            if (schema.staticFields != null)
+                copy.staticFields.putAll(schema.staticFields);
+
+            copy.uuidFields = schema.uuidFields;
+            copy.currentTimeFields = schema.currentTimeFields;
+            copy.expiryFields = schema.expiryFields;
+        }
+        return copy;
+    }
+
     public Map<String, String> buildJwtMap(final long ttl, TtlUnit ttlUnit) {
         final var jwtMap = new HashMap<String, String>();
 
@@ -60,4 +92,134 @@ public class JwtPartialSchema {
         return jwtMap;
 
     }
+
+    /**
+     * Builds this section of the jwt as a base64url encoded json object.
+     * The static fields are serialized and encoded once, only the time and uuid fields are encoded on each call.
+     * Dynamic fields override static fields with the same name, the same way they do in {@link #buildJwtMap(long, TtlUnit)}.
+     *
+     * @param ttl - ttl used for the expiry fields.
+     * @param ttlUnit - unit of the ttl.
+     * @return - the base64url encoded json object.
+     */
+    public String encode(final long ttl, final TtlUnit ttlUnit) {
+        var part = this.encodedPart;
+
+        if (part == null) {
+            part = EncodedPart.compile(this);
+            this.encodedPart = part;
+        }
+
+        return part.encode(ttl, ttlUnit);
+    }
+
+    /**
+     * A jwt section split into a pre-encoded static prefix and the dynamic fields.
+     * The json of the static prefix is padded with whitespace to a multiple of 3 bytes, so its base64 encoding can be reused
+     * as is and the encoding of the dynamic fields appended to it.
+     */
+    private static final class EncodedPart {
+        private static final int EXPIRY = 0;
+        private static final int CURRENT_TIME = 1;
+        private static final int UUID = 2;
+
+        private final String encodedPrefix;
+        private final String[] dynamicKeys;
+        private final int[] dynamicTypes;
+
+        private EncodedPart(final String encodedPrefix, final String[] dynamicKeys, final int[] dynamicTypes) {
+            this.encodedPrefix = encodedPrefix;
+            this.dynamicKeys = dynamicKeys;
+            this.dynamicTypes = dynamicTypes;
+        }
+
+        private static EncodedPart compile(final JwtPartialSchema schema) {
+
+            /* later types win for the same field, same as the put order in buildJwtMap. */
+            final var dynamicFields = new LinkedHashMap<String, Integer>();
+            putAll(dynamicFields, schema.expiryFields, EXPIRY);
+            putAll(dynamicFields, schema.currentTimeFields, CURRENT_TIME);
+            putAll(dynamicFields, schema.uuidFields, UUID);
+
+            final var staticFields = new LinkedHashMap<String, String>();
+            if (schema.staticFields != null)
+                for (final var entry : schema.staticFields.entrySet())
+                    if (!dynamicFields.containsKey(entry.getKey()))
+                        staticFields.put(entry.getKey(), entry.getValue());
+
+            final var staticJson = JsonMapper.toJson(staticFields);
+
+            if (dynamicFields.isEmpty())
+                return new EncodedPart(encode(staticJson), new String[0], new int[0]);
+
+            /* open json object without the closing brace, ready for the dynamic fields. */
+            final var prefix = new StringBuilder(staticJson.substring(0, staticJson.length() - 1));
+
+            if (!staticFields.isEmpty())
+                prefix.append(',');
+
+            while (prefix.toString().getBytes(StandardCharsets.UTF_8).length % 3 != 0)
+                prefix.append(' ');
+
+            final var dynamicKeys = new String[dynamicFields.size()];
+            final var dynamicTypes = new int[dynamicFields.size()];
+            var x = 0;
+            for (final var entry : dynamicFields.entrySet()) {
+                dynamicKeys[x] = JsonMapper.toJson(entry.getKey()) + ":\"";
+                dynamicTypes[x] = entry.getValue();
+                x++;
+            }
+
+            return new EncodedPart(encode(prefix.toString()), dynamicKeys, dynamicTypes);
+        }
+
+        private String encode(final long ttl, final TtlUnit ttlUnit) {
+
+            if (this.dynamicKeys.length == 0)
+                return this.encodedPrefix;
+
+            final var nowInSeconds = System.currentTimeMillis() / 1000;
+            final var jwtTtl = TtlUnit.SECOND.millisToUnit(ttlUnit.unitToMillis(ttl));
+            final var suffix = new StringBuilder(this.dynamicKeys.length * 32);
+
+            for (int x = 0; x < this.dynamicKeys.length; x++) {
+
+                if (x > 0)
+                    suffix.append(',');
+
+                suffix.append(this.dynamicKeys[x]);
+
+                /* none of these values need json escaping. */
+                switch (this.dynamicTypes[x]) {
+                    case EXPIRY:
+                        suffix.append(nowInSeconds + jwtTtl);
+                        break;
+                    case CURRENT_TIME:
+                        suffix.append(nowInSeconds);
+                        break;
+                    default:
+                        suffix.append(UuidUtil.uuidToBase64(UuidUtil.getUUID()));
+                }
+                suffix.append('"');
+            }
+            suffix.append('}');
+
+            return this.encodedPrefix + encode(suffix.toString());
+        }
+
+        private static void putAll(final Map<String, Integer> dynamicFields, final List<String> fields, final int type) {
+
+            if (fields == null)
+                return;
+
+            for (final var field : fields) {
+                dynamicFields.remove(field);
+                dynamicFields.put(field, type);
+            }
+        }
+
+        private static String encode(final String json) {
+            return Base64.encodeBase64URLSafeString(json.getBytes(StandardCharsets.UTF_8));
+        }
+    }
 }
@@ -0,0 +1,53 @@
+package com.networknt.rule.generic.token;
+
+import com.networknt.rule.generic.token.schema.TokenState;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+
+public class FileTokenStoreTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void sharedTokenTest() {
+        final var instanceA = new FileTokenStore(this.directory, "secret".toCharArray());
+        final var instanceB = new FileTokenStore(this.directory, "secret".toCharArray());
+        final var expiration = System.currentTimeMillis() + 60000;
+
+        Assertions.assertNull(instanceB.get("salesforce"));
+        instanceA.put("salesforce", new TokenState("token-1", expiration, null));
+        Assertions.assertEquals("token-1", instanceB.get("salesforce").getAccessToken());
+        Assertions.assertEquals(expiration, instanceB.get("salesforce").getExpiration());
+
+        /* an older token does not replace a newer one. */
+        instanceB.put("salesforce", new TokenState("token-0", expiration - 1000, null));
+        Assertions.assertEquals("token-1", instanceA.get("salesforce").getAccessToken());
+    }
+
+    @Test
+    public void leaseTest() throws InterruptedException {
+        final var instanceA = new FileTokenStore(this.directory, "secret".toCharArray());
+        final var instanceB = new FileTokenStore(this.directory, "secret".toCharArray());
+
+        Assertions.assertTrue(instanceA.tryAcquireLease("salesforce", "a", 60000));
+        Assertions.assertFalse(instanceB.tryAcquireLease("salesforce", "b", 60000));
+
+        /* leases are per schema. */
+        Assertions.assertTrue(instanceB.tryAcquireLease("lifeware", "b", 60000));
+
+        /* only the owner can release. */
+        instanceB.releaseLease("salesforce", "b");
+        Assertions.assertFalse(instanceB.tryAcquireLease("salesforce", "b", 60000));
+        instanceA.releaseLease("salesforce", "a");
+        Assertions.assertTrue(instanceB.tryAcquireLease("salesforce", "b", 50));
+
+        /* a lease that is never released runs out. */
+        Thread.sleep(100);
+        Assertions.assertTrue(instanceA.tryAcquireLease("salesforce", "a", 60000));
+        Assertions.assertFalse(instanceB.tryAcquireLease("salesforce", "b", 60000));
+    }
+}
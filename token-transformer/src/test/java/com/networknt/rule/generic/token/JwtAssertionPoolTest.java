@@ -0,0 +1,93 @@
+package com.networknt.rule.generic.token;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+public class JwtAssertionPoolTest {
+
+    private ExecutorService executor;
+
+    @BeforeEach
+    public void setUp() {
+        this.executor = Executors.newSingleThreadExecutor();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        this.executor.shutdownNow();
+    }
+
+    @Test
+    public void takeFromPoolTest() throws InterruptedException {
+        final var minted = new AtomicInteger();
+        final var pool = new JwtAssertionPool(3, 0, 60000, 0, () -> "jwt-" + minted.incrementAndGet(), this.executor);
+
+        /* the first take signs on demand and fills the pool behind it. */
+        final var handedOut = new HashSet<String>();
+        handedOut.add(pool.take());
+        awaitTrue(() -> pool.size() == 3);
+
+        for (int x = 0; x < 10; x++)
+            Assertions.assertTrue(handedOut.add(pool.take()), "assertion handed out twice");
+
+        awaitTrue(() -> pool.size() == 3);
+    }
+
+    @Test
+    public void idlePoolIsNotResignedTest() throws InterruptedException {
+        final var minted = new AtomicInteger();
+        final var pool = new JwtAssertionPool(3, 2000, 60000, 1000, () -> "jwt-" + minted.incrementAndGet(), this.executor);
+        pool.refill();
+        awaitTrue(() -> minted.get() == 3);
+
+        /* nothing is signed while no assertion is taken, even once the pooled ones come within the safety margin. */
+        Thread.sleep(1200);
+        Assertions.assertEquals(3, minted.get());
+
+        /* the next take signs on demand and refills the pool behind it. */
+        Assertions.assertFalse(Set.of("jwt-1", "jwt-2", "jwt-3").contains(pool.take()));
+        awaitTrue(() -> minted.get() == 7);
+        pool.close();
+    }
+
+    @Test
+    public void maxAgeWithoutExpiryTest() throws InterruptedException {
+        final var minted = new AtomicInteger();
+        final var pool = new JwtAssertionPool(1, 0, 2000, 500, () -> "jwt-" + minted.incrementAndGet(), this.executor);
+        pool.refill();
+        awaitTrue(() -> minted.get() == 1);
+
+        /* assertions without expiry fields are still replaced once they reach maxAge. */
+        Thread.sleep(2100);
+        Assertions.assertNotEquals("jwt-1", pool.take());
+        pool.close();
+    }
+
+    @Test
+    public void ttlWithinMarginIsNotPooledTest() {
+        final var minted = new AtomicInteger();
+        final var pool = new JwtAssertionPool(3, 1000, 60000, 1000, () -> "jwt-" + minted.incrementAndGet(), this.executor);
+
+        Assertions.assertEquals("jwt-1", pool.take());
+        Assertions.assertEquals("jwt-2", pool.take());
+        Assertions.assertEquals(0, pool.size());
+    }
+
+    private static void awaitTrue(final BooleanSupplier condition) throws InterruptedException {
+        final var deadline = System.currentTimeMillis() + 5000;
+
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline)
+            Thread.sleep(10);
+
+        Assertions.assertTrue(condition.getAsBoolean());
+    }
+}
@@ -0,0 +1,77 @@
+package com.networknt.rule.generic.token;
+
+import com.networknt.config.JsonMapper;
+import com.networknt.rule.generic.token.schema.TokenCacheKeySchema;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+public class KeyedTokenCacheTest {
+
+    @Test
+    public void keyCopiesTest() {
+        final var schema = new TokenTransformerAction().getTokenSchema("cacheKeyTest");
+        final var cache = new KeyedTokenCache(schema);
+
+        final var tenantA = cache.get("tenant-a");
+        Assertions.assertSame(tenantA, cache.get("tenant-a"));
+        Assertions.assertEquals("tenant-a", tenantA.getCacheKeyValue());
+        Assertions.assertEquals("tenant-a", tenantA.getSharedVariables().getClientId());
+        Assertions.assertNull(tenantA.getSharedVariables().getAccessToken());
+        Assertions.assertSame(schema.getTokenRequest(), tenantA.getTokenRequest());
+        Assertions.assertNotSame(schema.getSharedVariables(), tenantA.getSharedVariables());
+        Assertions.assertNull(schema.getSharedVariables().getClientId());
+    }
+
+    @Test
+    public void evictsExpiredBeforeLeastRecentlyUsedTest() {
+        final var schema = new TokenTransformerAction().getTokenSchema("cacheKeyTest");
+        final var cache = new KeyedTokenCache(schema);
+
+        final var expired = cache.get("expired");
+        expired.getSharedVariables().setAccessToken("old");
+        expired.getSharedVariables().setExpiration(System.currentTimeMillis() - 1);
+        final var idle = cache.get("idle");
+        idle.getSharedVariables().setAccessToken("valid");
+        idle.getSharedVariables().setExpiration(System.currentTimeMillis() + 60000);
+        cache.get("expired");
+
+        /* 'expired' was used last, but its token is of no use anymore. */
+        cache.get("new");
+        Assertions.assertEquals(2, cache.size());
+        Assertions.assertEquals(1, cache.getEvictions());
+        Assertions.assertSame(idle, cache.get("idle"));
+
+        /* without expired tokens, the least recently used key goes. */
+        cache.get("newer");
+        Assertions.assertEquals(2, cache.size());
+        Assertions.assertSame(idle, cache.get("idle"));
+    }
+
+    @Test
+    public void oneOffKeysTest() {
+        final var schema = new TokenTransformerAction().getTokenSchema("cacheKeyTest");
+        final var cache = new KeyedTokenCache(schema);
+        final var hot = cache.get("hot");
+
+        /* a flood of keys seen once only pushes out each other, never a key that keeps being used. */
+        for (int x = 0; x < 1000; x++) {
+            cache.get("one-off-" + x);
+            Assertions.assertSame(hot, cache.get("hot"));
+        }
+
+        Assertions.assertEquals(2, cache.size());
+        Assertions.assertEquals(999, cache.getEvictions());
+    }
+
+    @Test
+    public void resolveKeyTest() {
+        final var cacheKey = JsonMapper.objectMapper.convertValue(Map.of("header", "X-Tenant-Id", "pathSegment", 2), TokenCacheKeySchema.class);
+
+        Assertions.assertEquals("abc", cacheKey.resolve(Map.of("requestHeaders", Map.of("x-tenant-id", "abc"))));
+        Assertions.assertEquals("t1", cacheKey.resolve(Map.of("requestPath", "/v1/t1/accounts")));
+        Assertions.assertNull(cacheKey.resolve(Map.of("requestPath", "/v1")));
+        Assertions.assertNull(cacheKey.resolve(Map.of()));
+    }
+}
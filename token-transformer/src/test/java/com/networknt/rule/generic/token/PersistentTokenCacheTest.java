@@ -0,0 +1,91 @@
+package com.networknt.rule.generic.token;
+
+import com.networknt.rule.generic.token.schema.SharedVariableSchema;
+import com.networknt.rule.generic.token.schema.TokenSchema;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+public class PersistentTokenCacheTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void warmStartTest() throws IOException {
+        final var cache = new PersistentTokenCache(this.directory, "secret".toCharArray());
+        final var expiration = System.currentTimeMillis() + 60000;
+        cache.save("salesforce", sharedVariables("token-1", expiration));
+
+        /* a new instance with the same secret picks the token up. */
+        final var restarted = new SharedVariableSchema();
+        Assertions.assertTrue(new PersistentTokenCache(this.directory, "secret".toCharArray()).load("salesforce", restarted));
+        Assertions.assertEquals("token-1", restarted.getAccessToken());
+        Assertions.assertEquals(expiration, restarted.getExpiration());
+
+        /* the token is not readable from the file. */
+        final var content = Files.readString(cache.fileFor("salesforce"), StandardCharsets.ISO_8859_1);
+        Assertions.assertFalse(content.contains("token-1"));
+    }
+
+    @Test
+    public void expiredTokenIsNotLoadedTest() throws IOException {
+        final var cache = new PersistentTokenCache(this.directory, "secret".toCharArray());
+        cache.save("salesforce", sharedVariables("token-1", System.currentTimeMillis() - 1));
+
+        final var restarted = new SharedVariableSchema();
+        Assertions.assertFalse(cache.load("salesforce", restarted));
+        Assertions.assertNull(restarted.getAccessToken());
+    }
+
+    @Test
+    public void wrongKeyOrSchemaIsRejectedTest() throws IOException {
+        final var cache = new PersistentTokenCache(this.directory, "secret".toCharArray());
+        cache.save("salesforce", sharedVariables("token-1", System.currentTimeMillis() + 60000));
+
+        Assertions.assertFalse(new PersistentTokenCache(this.directory, "other".toCharArray()).load("salesforce", new SharedVariableSchema()));
+
+        /* a file moved to another schema's name does not decrypt for that schema. */
+        Files.copy(cache.fileFor("salesforce"), cache.fileFor("lifeware"));
+        Assertions.assertFalse(cache.load("lifeware", new SharedVariableSchema()));
+    }
+
+    @Test
+    public void saltPerDirectoryTest() throws IOException {
+        final var cache = new PersistentTokenCache(this.directory.resolve("first"), "secret".toCharArray());
+        cache.save("salesforce", sharedVariables("token-1", System.currentTimeMillis() + 60000));
+        Assertions.assertEquals(16, Files.size(this.directory.resolve("first/.salt")));
+
+        /* the same secret in another directory derives another key, so a copied token file cannot be read there. */
+        final var other = new PersistentTokenCache(this.directory.resolve("second"), "secret".toCharArray());
+        Files.copy(cache.fileFor("salesforce"), other.fileFor("salesforce"));
+        Assertions.assertFalse(other.load("salesforce", new SharedVariableSchema()));
+    }
+
+    @Test
+    public void changedDefinitionTest() throws IOException {
+        final var cache = new PersistentTokenCache(this.directory, "secret".toCharArray());
+        final var previous = new TokenSchema();
+        previous.setFingerprint(TokenTransformerConfig.fingerprint(Map.of("clientId", "previous")));
+        cache.save(TokenTransformerAction.storeKey("salesforce", previous), sharedVariables("token-1", System.currentTimeMillis() + 60000));
+
+        /* the token requested with the previous definition is not loaded for the changed one. */
+        final var changed = new TokenSchema();
+        changed.setFingerprint(TokenTransformerConfig.fingerprint(Map.of("clientId", "changed")));
+        Assertions.assertFalse(cache.load(TokenTransformerAction.storeKey("salesforce", changed), new SharedVariableSchema()));
+        Assertions.assertTrue(cache.load(TokenTransformerAction.storeKey("salesforce", previous), new SharedVariableSchema()));
+    }
+
+    private static SharedVariableSchema sharedVariables(final String accessToken, final long expiration) {
+        final var sharedVariables = new SharedVariableSchema();
+        sharedVariables.setAccessToken(accessToken);
+        sharedVariables.setExpiration(expiration);
+        return sharedVariables;
+    }
+}
@@ -0,0 +1,55 @@
+package com.networknt.rule.generic.token;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class TokenCircuitBreakerTest {
+
+    @Test
+    public void opensAfterThresholdTest() throws InterruptedException {
+        final var breaker = new TokenCircuitBreaker("test", 2, 100, 1000, 0);
+
+        breaker.recordFailure();
+        Assertions.assertTrue(breaker.allowRequest());
+        breaker.recordFailure();
+        Assertions.assertEquals(TokenCircuitBreaker.State.OPEN, breaker.getStats().getState());
+        Assertions.assertFalse(breaker.allowRequest());
+        Assertions.assertEquals(1, breaker.getStats().getRejections());
+
+        /* one trial request once the backoff runs out, everyone else still waits. */
+        Thread.sleep(150);
+        Assertions.assertTrue(breaker.allowRequest());
+        Assertions.assertEquals(TokenCircuitBreaker.State.HALF_OPEN, breaker.getStats().getState());
+        Assertions.assertFalse(breaker.allowRequest());
+
+        /* a trial that did not reach the token service is handed to the next caller. */
+        breaker.releaseTrial();
+        Assertions.assertEquals(TokenCircuitBreaker.State.OPEN, breaker.getStats().getState());
+        Assertions.assertTrue(breaker.allowRequest());
+
+        breaker.recordSuccess();
+        Assertions.assertEquals(TokenCircuitBreaker.State.CLOSED, breaker.getStats().getState());
+        Assertions.assertEquals(0, breaker.getStats().getConsecutiveFailures());
+        Assertions.assertTrue(breaker.allowRequest());
+    }
+
+    @Test
+    public void backoffDoublesUpToMaximumTest() throws InterruptedException {
+        final var breaker = new TokenCircuitBreaker("test", 1, 100, 300, 0);
+        final var backoffs = new long[4];
+
+        for (int x = 0; x < backoffs.length; x++) {
+            final var before = System.currentTimeMillis();
+            breaker.recordFailure();
+            backoffs[x] = breaker.getOpenUntil() - before;
+
+            Thread.sleep(breaker.getOpenUntil() - System.currentTimeMillis() + 10);
+            Assertions.assertTrue(breaker.allowRequest());
+        }
+
+        Assertions.assertTrue(backoffs[0] >= 100 && backoffs[0] < 200);
+        Assertions.assertTrue(backoffs[1] >= 200 && backoffs[1] < 300);
+        Assertions.assertTrue(backoffs[2] >= 300 && backoffs[2] < 400);
+        Assertions.assertTrue(backoffs[3] >= 300 && backoffs[3] < 400);
+    }
+}
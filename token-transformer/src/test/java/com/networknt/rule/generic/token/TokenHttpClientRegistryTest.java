@@ -0,0 +1,105 @@
+package com.networknt.rule.generic.token;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import javax.net.ssl.SSLContext;
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+public class TokenHttpClientRegistryTest {
+
+    private static final Object OWNER = new Object();
+
+    @Test
+    public void sharedClientTest() throws Exception {
+        final var registry = new TokenHttpClientRegistry(0);
+        final var sslContext = SSLContext.getDefault();
+
+        try {
+            final var first = registry.getClient(OWNER, 0L, () -> sslContext, null, 443, HttpClient.Version.HTTP_1_1, Duration.ofSeconds(1));
+            final var second = registry.getClient(OWNER, 0L, () -> sslContext, null, 443, HttpClient.Version.HTTP_1_1, Duration.ofSeconds(1));
+            Assertions.assertSame(first, second);
+
+            /* any difference in transport settings gets its own client. */
+            Assertions.assertNotSame(first, registry.getClient(OWNER, 0L, () -> sslContext, null, 443, HttpClient.Version.HTTP_2, Duration.ofSeconds(1)));
+            Assertions.assertNotSame(first, registry.getClient(OWNER, 0L, () -> sslContext, "proxy.local", 8080, HttpClient.Version.HTTP_1_1, Duration.ofSeconds(1)));
+            Assertions.assertNotSame(first, registry.getClient(new Object(), 0L, TokenHttpClientRegistryTest::initializedContext, null, 443, HttpClient.Version.HTTP_1_1, Duration.ofSeconds(1)));
+
+            final var stats = registry.getStats();
+            Assertions.assertEquals(4, stats.getClients());
+            Assertions.assertEquals(1, stats.getHits());
+            Assertions.assertEquals(4, stats.getMisses());
+
+        } finally {
+            registry.shutdown();
+        }
+    }
+
+    @Test
+    public void idleEvictionTest() throws Exception {
+        final var registry = new TokenHttpClientRegistry(200);
+        final var sslContext = SSLContext.getDefault();
+
+        try {
+            final var idle = registry.getClient(OWNER, 0L, () -> sslContext, null, 443, HttpClient.Version.HTTP_1_1, Duration.ofSeconds(1));
+            Thread.sleep(300);
+
+            Assertions.assertEquals(1, registry.evictIdle());
+            Assertions.assertEquals(0, registry.getStats().getClients());
+            Assertions.assertEquals(1, registry.getStats().getEvictions());
+            Assertions.assertTrue(idle.isTerminated() || idle.awaitTermination(Duration.ofSeconds(5)));
+
+            /* a new client is created once the old one is gone. */
+            Assertions.assertNotSame(idle, registry.getClient(OWNER, 0L, () -> sslContext, null, 443, HttpClient.Version.HTTP_1_1, Duration.ofSeconds(1)));
+
+        } finally {
+            registry.shutdown();
+        }
+    }
+
+    @Test
+    public void uncachedSslContextTest() throws Exception {
+        final var registry = new TokenHttpClientRegistry(300000);
+        final var built = new AtomicInteger();
+
+        /* a schema with cacheSSLContext false builds a new context whenever it is asked for one. */
+        final Supplier<SSLContext> uncached = () -> {
+            built.incrementAndGet();
+            return initializedContext();
+        };
+
+        try {
+            final var first = registry.getClient(OWNER, 1L, uncached, null, 443, HttpClient.Version.HTTP_1_1, Duration.ofSeconds(1));
+
+            for (int x = 0; x < 5; x++)
+                Assertions.assertSame(first, registry.getClient(OWNER, 1L, uncached, null, 443, HttpClient.Version.HTTP_1_1, Duration.ofSeconds(1)));
+
+            Assertions.assertEquals(1, registry.getStats().getClients());
+            Assertions.assertEquals(1, built.get());
+
+            /* a keystore reload replaces the client and shuts the old one down right away. */
+            final var reloaded = registry.getClient(OWNER, 2L, uncached, null, 443, HttpClient.Version.HTTP_1_1, Duration.ofSeconds(1));
+            Assertions.assertNotSame(first, reloaded);
+            Assertions.assertEquals(1, registry.getStats().getClients());
+            Assertions.assertEquals(1, registry.getStats().getReplacements());
+            Assertions.assertTrue(first.isTerminated() || first.awaitTermination(Duration.ofSeconds(5)));
+
+        } finally {
+            registry.shutdown();
+        }
+    }
+
+    private static SSLContext initializedContext() {
+        try {
+            final var sslContext = SSLContext.getInstance("TLS");
+            sslContext.init(null, null, null);
+            return sslContext;
+
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.networknt.rule.generic.token;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import javax.net.ssl.X509TrustManager;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.KeyStore;
+import java.util.Comparator;
+
+public class TokenKeyStoreManagerTest {
+
+    private static final char[] PASSWORD = "password".toCharArray();
+
+    @Test
+    public void rotatedKeyStoreIsReloadedTest() throws Exception {
+        final var configDir = Paths.get(TokenKeyStoreManagerTest.class.getClassLoader().getResource("config/client.truststore").toURI()).getParent();
+        final var rotating = configDir.resolve("rotating.truststore");
+        Files.copy(configDir.resolve("client.truststore"), rotating, StandardCopyOption.REPLACE_EXISTING);
+
+        try {
+            final var manager = new TokenKeyStoreManager();
+            final var trustManagers = manager.getTrustManagers("rotating.truststore", PASSWORD, null);
+            Assertions.assertEquals(1, ((X509TrustManager) trustManagers[0]).getAcceptedIssuers().length);
+
+            /* derived objects are cached until the keystore changes. */
+            Assertions.assertSame(trustManagers[0], manager.getTrustManagers("rotating.truststore", PASSWORD, null)[0]);
+
+            /* rotate the truststore to one that no longer trusts the certificate. */
+            final var generation = TokenKeyStoreManager.getGeneration();
+            final var rotated = KeyStore.getInstance("JKS");
+            try (InputStream in = Files.newInputStream(rotating)) {
+                rotated.load(in, PASSWORD);
+            }
+            rotated.deleteEntry("server");
+            writeAtomically(rotated, rotating);
+
+            final var deadline = System.currentTimeMillis() + 10000;
+            while (TokenKeyStoreManager.getGeneration() == generation && System.currentTimeMillis() < deadline)
+                Thread.sleep(50);
+
+            Assertions.assertNotEquals(generation, TokenKeyStoreManager.getGeneration());
+            final var reloaded = manager.getTrustManagers("rotating.truststore", PASSWORD, null);
+            Assertions.assertNotSame(trustManagers[0], reloaded[0]);
+            Assertions.assertEquals(0, ((X509TrustManager) reloaded[0]).getAcceptedIssuers().length);
+
+        } finally {
+            Files.deleteIfExists(rotating);
+        }
+    }
+
+    @Test
+    public void symlinkSwapIsReloadedTest() throws Exception {
+        final var configDir = Paths.get(TokenKeyStoreManagerTest.class.getClassLoader().getResource("config/client.truststore").toURI()).getParent();
+        final var mount = configDir.resolve("mounted");
+
+        /* the layout of a Kubernetes secret mount: mounted/client.truststore -> ..data/client.truststore, ..data -> ..v1 */
+        Files.createDirectories(mount.resolve("..v1"));
+        Files.copy(configDir.resolve("client.truststore"), mount.resolve("..v1/client.truststore"), StandardCopyOption.REPLACE_EXISTING);
+        Files.createSymbolicLink(mount.resolve("..data"), Paths.get("..v1"));
+        Files.createSymbolicLink(mount.resolve("client.truststore"), Paths.get("..data/client.truststore"));
+
+        try {
+            final var manager = new TokenKeyStoreManager();
+            final var trustManagers = manager.getTrustManagers("mounted/client.truststore", PASSWORD, null);
+            Assertions.assertEquals(1, ((X509TrustManager) trustManagers[0]).getAcceptedIssuers().length);
+
+            /* rotate by writing the new truststore to ..v2 and swapping the ..data link to it. */
+            final var generation = TokenKeyStoreManager.getGeneration();
+            final var rotated = KeyStore.getInstance("JKS");
+            try (InputStream in = Files.newInputStream(mount.resolve("client.truststore"))) {
+                rotated.load(in, PASSWORD);
+            }
+            rotated.deleteEntry("server");
+            Files.createDirectories(mount.resolve("..v2"));
+            try (var out = Files.newOutputStream(mount.resolve("..v2/client.truststore"))) {
+                rotated.store(out, PASSWORD);
+            }
+            Files.setLastModifiedTime(mount.resolve("..v2/client.truststore"), java.nio.file.attribute.FileTime.fromMillis(System.currentTimeMillis() + 1000));
+            Files.createSymbolicLink(mount.resolve("..data_tmp"), Paths.get("..v2"));
+            Files.move(mount.resolve("..data_tmp"), mount.resolve("..data"), StandardCopyOption.ATOMIC_MOVE);
+
+            final var deadline = System.currentTimeMillis() + 10000;
+            while (TokenKeyStoreManager.getGeneration() == generation && System.currentTimeMillis() < deadline)
+                Thread.sleep(50);
+
+            Assertions.assertNotEquals(generation, TokenKeyStoreManager.getGeneration());
+            Assertions.assertEquals(0, ((X509TrustManager) manager.getTrustManagers("mounted/client.truststore", PASSWORD, null)[0]).getAcceptedIssuers().length);
+
+        } finally {
+            try (var paths = Files.walk(mount)) {
+                paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
+
+    private static void writeAtomically(final KeyStore keyStore, final Path target) throws Exception {
+        final var temp = Files.createTempFile(target.getParent(), "rotating", ".tmp");
+        try (var out = Files.newOutputStream(temp)) {
+            keyStore.store(out, PASSWORD);
+        }
+
+        /* make sure the new file does not share the modified time of the old one. */
+        Files.setLastModifiedTime(temp, java.nio.file.attribute.FileTime.fromMillis(Files.getLastModifiedTime(target).toMillis() + 1000));
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
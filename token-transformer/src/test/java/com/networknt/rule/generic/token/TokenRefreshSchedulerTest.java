@@ -0,0 +1,117 @@
+package com.networknt.rule.generic.token;
+
+import com.networknt.rule.generic.token.schema.SharedVariableSchema;
+import com.networknt.rule.generic.token.schema.TtlUnit;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TokenRefreshSchedulerTest {
+
+    @Test
+    public void refreshBeforeGracePeriodTest() throws InterruptedException {
+        final var refreshed = new CountDownLatch(1);
+        final var refreshes = new AtomicInteger();
+        final var scheduler = new TokenRefreshScheduler(200, 0, tokenSchema -> {
+            refreshes.incrementAndGet();
+            refreshed.countDown();
+        });
+
+        /* token expires in 3 seconds with a 1 second grace period, so the refresh should happen at around 1800ms. */
+        final var sharedVariables = new SharedVariableSchema();
+        sharedVariables.setTokenTtlUnit(TtlUnit.MILLISECOND);
+        sharedVariables.setWaitLength(1000);
+        sharedVariables.setExpiration(System.currentTimeMillis() + 3000);
+
+        try {
+            final var start = System.currentTimeMillis();
+
+            /* scheduling again replaces the first refresh. */
+            scheduler.scheduleRefresh("schedulerTest", sharedVariables);
+            scheduler.scheduleRefresh("schedulerTest", sharedVariables);
+
+            Assertions.assertTrue(refreshed.await(5, TimeUnit.SECONDS));
+            Assertions.assertTrue(System.currentTimeMillis() - start < 2500);
+            Thread.sleep(200);
+            Assertions.assertEquals(1, refreshes.get());
+
+        } finally {
+            scheduler.shutdown();
+        }
+    }
+
+    @Test
+    public void ttlShorterThanLeadTimeTest() throws InterruptedException {
+        final var refreshes = new AtomicInteger();
+        final var sharedVariables = new SharedVariableSchema();
+        sharedVariables.setTokenTtlUnit(TtlUnit.MILLISECOND);
+        final var scheduler = new TokenRefreshScheduler[1];
+
+        /* every refresh returns another token living 2 seconds, well under the 10 second lead time. */
+        scheduler[0] = new TokenRefreshScheduler(10000, 0, tokenSchema -> {
+            refreshes.incrementAndGet();
+            sharedVariables.setExpiration(System.currentTimeMillis() + 2000);
+            scheduler[0].scheduleRefresh(tokenSchema, sharedVariables);
+        });
+
+        try {
+            sharedVariables.setExpiration(System.currentTimeMillis() + 2000);
+            scheduler[0].scheduleRefresh("schedulerTest", sharedVariables);
+
+            Thread.sleep(500);
+            Assertions.assertEquals(0, refreshes.get());
+
+            /* refreshes at around 1000ms and 2000ms, instead of back to back. */
+            Thread.sleep(2000);
+            Assertions.assertTrue(refreshes.get() >= 1 && refreshes.get() <= 3, "refreshes: " + refreshes.get());
+
+        } finally {
+            scheduler[0].shutdown();
+        }
+    }
+
+    @Test
+    public void neverInGracePeriodTest() {
+        final var scheduler = new TokenRefreshScheduler(1000, 5000, tokenSchema -> { });
+        final var sharedVariables = new SharedVariableSchema();
+        sharedVariables.setTokenTtlUnit(TtlUnit.MILLISECOND);
+        sharedVariables.setWaitLength(2000);
+
+        try {
+            /* jitter larger than the lead time, and lifetimes where half of it ends inside the grace period. */
+            for (final var lifetime : new long[] { 2500, 3000, 5000, 8000, 60000 }) {
+                final var now = System.currentTimeMillis();
+                sharedVariables.setExpiration(now + lifetime);
+
+                for (int x = 0; x < 100; x++) {
+                    final var delay = scheduler.refreshDelay(sharedVariables, now);
+                    Assertions.assertTrue(delay <= lifetime - 2000, "lifetime: " + lifetime + " delay: " + delay);
+                    Assertions.assertTrue(delay >= 0);
+                }
+            }
+
+        } finally {
+            scheduler.shutdown();
+        }
+    }
+
+    @Test
+    public void noRetryAfterExpirationTest() throws InterruptedException {
+        final var refreshes = new AtomicInteger();
+        final var scheduler = new TokenRefreshScheduler(0, 0, tokenSchema -> refreshes.incrementAndGet());
+        final var sharedVariables = new SharedVariableSchema();
+        sharedVariables.setExpiration(System.currentTimeMillis() + 100);
+
+        try {
+            scheduler.scheduleRetry("schedulerTest", sharedVariables);
+            Thread.sleep(1500);
+            Assertions.assertEquals(0, refreshes.get());
+
+        } finally {
+            scheduler.shutdown();
+        }
+    }
+}
@@ -1,16 +1,29 @@
 package com.networknt.rule.generic.token;
 
+import com.networknt.config.Config;
 import com.networknt.rule.RuleActionValue;
+import com.networknt.rule.generic.token.exception.TokenRequestTimeoutException;
+import com.networknt.rule.generic.token.exception.TokenStoreLeaseTimeoutException;
+import com.sun.net.httpserver.HttpServer;
 import com.networknt.rule.generic.token.schema.SharedVariableSchema;
+import com.networknt.rule.generic.token.schema.TokenSchema;
 import com.networknt.rule.generic.token.schema.SourceSchema;
 import com.networknt.rule.generic.token.schema.UpdateSchema;
 import com.networknt.utility.Constants;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class TokenTransformerActionTest {
 
@@ -186,4 +199,401 @@ public class TokenTransformerActionTest {
         testSharedVariable.setAccessToken("abc124");
         Assertions.assertEquals("Bearer abc124", testUpdateSchema.getResolvedHeaders(testSharedVariable).get("Authorization"));
     }
+
+    @Test
+    public void singleFlightRefreshTest() throws IOException, InterruptedException {
+        final var tokenCalls = new AtomicInteger();
+        final var server = startTokenServer(tokenCalls, 200);
+
+        try {
+            final var action = new TokenTransformerAction();
+            final var actionValues = new ArrayList<RuleActionValue>();
+            final var tokenSchemaActionValue = new RuleActionValue();
+            tokenSchemaActionValue.setActionValueId("tokenSchemas");
+            tokenSchemaActionValue.setValue("singleFlightTest");
+            actionValues.add(tokenSchemaActionValue);
+
+            /* first expiry, every caller should get the token from one upstream call. */
+            this.assertConcurrentCallers(action, actionValues, 16, "Bearer token-1");
+            Assertions.assertEquals(1, tokenCalls.get());
+
+            /* expire the cached token again, and expect exactly one more upstream call. */
+            this.expireSchema(action, "singleFlightTest");
+            this.assertConcurrentCallers(action, actionValues, 16, "Bearer token-2");
+            Assertions.assertEquals(2, tokenCalls.get());
+
+            /* every caller of an expired token is a miss, but only the two upstream calls count as refreshes. */
+            final var metrics = TokenTransformerAction.getMetrics().getSnapshot().get("singleFlightTest");
+            Assertions.assertEquals(2, metrics.getRefreshes());
+            Assertions.assertEquals(0, metrics.getFailures());
+            Assertions.assertTrue(metrics.getMisses() >= 2);
+            Assertions.assertEquals(2, metrics.getHttpSend().getCount());
+            Assertions.assertTrue(metrics.getHttpSend().getPercentile(50) >= 200_000);
+
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    public void staleWhileRevalidateTest() throws IOException, InterruptedException {
+        final var tokenCalls = new AtomicInteger();
+        final var server = startTokenServer(tokenCalls, 500);
+
+        try {
+            final var action = new TokenTransformerAction();
+            final var actionValues = new ArrayList<RuleActionValue>();
+            final var tokenSchemaActionValue = new RuleActionValue();
+            tokenSchemaActionValue.setActionValueId("tokenSchemas");
+            tokenSchemaActionValue.setValue("staleWhileRevalidateTest");
+            actionValues.add(tokenSchemaActionValue);
+
+            /* the token expires in 60 seconds, which puts it inside the 120 second grace period but still servable. */
+            action.getTokenSchema("staleWhileRevalidateTest").getSharedVariables().setExpiration(System.currentTimeMillis() + 60000);
+
+            final var start = System.currentTimeMillis();
+            final var staleResultMap = new HashMap<String, Object>();
+            action.performAction("ruleId", "actionId", new HashMap<>(), staleResultMap, actionValues);
+            Assertions.assertTrue(System.currentTimeMillis() - start < 500);
+            Assertions.assertEquals("Bearer stale-token", ((Map<String, Object>) ((Map<String, Object>) staleResultMap.get("requestHeaders")).get("update")).get("Authorization"));
+
+            /* wait for the revalidation to land */
+            final var deadline = System.currentTimeMillis() + 5000;
+            while (!"token-1".equals(action.getTokenSchema("staleWhileRevalidateTest").getSharedVariables().getAccessToken()) && System.currentTimeMillis() < deadline)
+                Thread.sleep(50);
+
+            final var freshResultMap = new HashMap<String, Object>();
+            action.performAction("ruleId", "actionId", new HashMap<>(), freshResultMap, actionValues);
+            Assertions.assertEquals("Bearer token-1", ((Map<String, Object>) ((Map<String, Object>) freshResultMap.get("requestHeaders")).get("update")).get("Authorization"));
+            Assertions.assertEquals(1, tokenCalls.get());
+
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    public void asyncTokenActionTest() throws Exception {
+        final var tokenCalls = new AtomicInteger();
+        final var server = startTokenServer(tokenCalls, 300);
+
+        try {
+            final var action = new TokenTransformerAction();
+
+            /* both callers share the one token request and neither blocks on it. */
+            final var firstResultMap = new HashMap<String, Object>();
+            final var secondResultMap = new HashMap<String, Object>();
+            final var first = action.handleTokenActionAsync("asyncTest", firstResultMap);
+            final var second = action.handleTokenActionAsync("asyncTest", secondResultMap);
+            Assertions.assertFalse(first.isDone());
+
+            CompletableFuture.allOf(first, second).get(5, TimeUnit.SECONDS);
+            Assertions.assertEquals(1, tokenCalls.get());
+            Assertions.assertEquals("Bearer token-1", ((Map<String, Object>) ((Map<String, Object>) firstResultMap.get("requestHeaders")).get("update")).get("Authorization"));
+            Assertions.assertEquals("Bearer token-1", ((Map<String, Object>) ((Map<String, Object>) secondResultMap.get("requestHeaders")).get("update")).get("Authorization"));
+
+            /* the token service is slower than the configured timeout of the schema. */
+            final var timedOut = action.handleTokenActionAsync("asyncTimeoutTest", new HashMap<>());
+            final var exception = Assertions.assertThrows(ExecutionException.class, () -> timedOut.get(5, TimeUnit.SECONDS));
+            Assertions.assertInstanceOf(TokenRequestTimeoutException.class, exception.getCause());
+
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    public void parallelSchemaResolutionTest() throws IOException {
+        final var tokenCalls = new AtomicInteger();
+        final var server = startTokenServer(tokenCalls, 500);
+
+        try {
+            final var action = new TokenTransformerAction();
+            final var actionValues = new ArrayList<RuleActionValue>();
+
+            for (final var tokenSchema : List.of("parallelTestA", "parallelTestB")) {
+                final var tokenSchemaActionValue = new RuleActionValue();
+                tokenSchemaActionValue.setActionValueId("tokenSchemas");
+                tokenSchemaActionValue.setValue(tokenSchema);
+                actionValues.add(tokenSchemaActionValue);
+            }
+
+            /* both schemas refresh at the same time, so the action takes one round trip instead of two. */
+            final var start = System.currentTimeMillis();
+            final var resultMap = new HashMap<String, Object>();
+            action.performAction("ruleId", "actionId", new HashMap<>(), resultMap, actionValues);
+            Assertions.assertTrue(System.currentTimeMillis() - start < 900);
+            Assertions.assertEquals(2, tokenCalls.get());
+
+            final var update = (Map<String, Object>) ((Map<String, Object>) resultMap.get("requestHeaders")).get("update");
+            Assertions.assertEquals(Set.of("Bearer token-1", "Bearer token-2"), Set.of(update.get("X-Token-A"), update.get("X-Token-B")));
+
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    public void cacheKeyTest() throws IOException, InterruptedException {
+        final var tokenCalls = new AtomicInteger();
+        final var server = startTokenServer(tokenCalls, 0);
+
+        try {
+            final var action = new TokenTransformerAction();
+
+            /* every tenant gets its own token, and keeps it while it is cached. */
+            Assertions.assertEquals("Bearer token-1", this.tenantAuthorization(action, "tenant-a"));
+            Assertions.assertEquals("Bearer token-2", this.tenantAuthorization(action, "tenant-b"));
+            Assertions.assertEquals("Bearer token-1", this.tenantAuthorization(action, "tenant-a"));
+            Assertions.assertEquals(2, tokenCalls.get());
+
+            /* a third tenant evicts the least recently used one, which needs a new token when it comes back. */
+            Assertions.assertEquals("Bearer token-3", this.tenantAuthorization(action, "tenant-c"));
+            Assertions.assertEquals("Bearer token-1", this.tenantAuthorization(action, "tenant-a"));
+            Assertions.assertEquals("Bearer token-4", this.tenantAuthorization(action, "tenant-b"));
+            Assertions.assertEquals(4, tokenCalls.get());
+
+            /* requests without the key are rejected instead of getting the token of another tenant. */
+            final var resultMap = new HashMap<String, Object>();
+            action.performAction("ruleId", "actionId", new HashMap<>(), resultMap, this.tokenSchemaActionValues("cacheKeyTest"));
+            Assertions.assertNotNull(resultMap.get(Constants.ERROR_MESSAGE));
+            Assertions.assertEquals(4, tokenCalls.get());
+
+            /* the action flags the failure by interrupting the caller. */
+            Thread.interrupted();
+
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    public void tokenPoolTest() throws IOException, InterruptedException {
+        final var tokenCalls = new AtomicInteger();
+        final var server = startTokenServer(tokenCalls, 0);
+
+        try {
+            final var action = new TokenTransformerAction();
+            final var actionValues = this.tokenSchemaActionValues("poolTest");
+
+            /* the first caller waits on a token, the other members are filled in the background. */
+            final var first = new HashMap<String, Object>();
+            action.performAction("ruleId", "actionId", new HashMap<>(), first, actionValues);
+            Assertions.assertEquals("Bearer token-1", ((Map<String, Object>) ((Map<String, Object>) first.get("requestHeaders")).get("update")).get("Authorization"));
+
+            final var deadline = System.currentTimeMillis() + 5000;
+            while (tokenCalls.get() < 3 && System.currentTimeMillis() < deadline)
+                action.performAction("ruleId", "actionId", new HashMap<>(), new HashMap<>(), actionValues);
+
+            Thread.sleep(100);
+            Assertions.assertEquals(3, tokenCalls.get());
+
+            /* once every member holds a token, they are handed out in turn. */
+            final var handedOut = new HashMap<Object, Integer>();
+            for (int x = 0; x < 6; x++) {
+                final var resultMap = new HashMap<String, Object>();
+                action.performAction("ruleId", "actionId", new HashMap<>(), resultMap, actionValues);
+                handedOut.merge(((Map<String, Object>) ((Map<String, Object>) resultMap.get("requestHeaders")).get("update")).get("Authorization"), 1, Integer::sum);
+            }
+            Assertions.assertEquals(Map.of("Bearer token-1", 2, "Bearer token-2", 2, "Bearer token-3", 2), handedOut);
+            Assertions.assertEquals(3, tokenCalls.get());
+
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    public void leaseWaitTest() throws Exception {
+        final var action = new TokenTransformerAction();
+        final var storeKey = TokenTransformerAction.storeKey("asyncTimeoutTest", action.getTokenSchema("asyncTimeoutTest"));
+        final var tokenStore = TokenTransformerAction.getTokenStore();
+        Assertions.assertTrue(tokenStore.tryAcquireLease(storeKey, "other-instance", 60000));
+
+        try {
+            /* another instance holds the lease for a minute, but the wait is capped at the 100ms request timeout of the schema. */
+            final var start = System.currentTimeMillis();
+            final var waiting = action.handleTokenActionAsync("asyncTimeoutTest", new HashMap<>());
+            final var exception = Assertions.assertThrows(ExecutionException.class, () -> waiting.get(5, TimeUnit.SECONDS));
+            Assertions.assertInstanceOf(TokenStoreLeaseTimeoutException.class, exception.getCause());
+            Assertions.assertTrue(System.currentTimeMillis() - start < 2000);
+
+        } finally {
+            tokenStore.releaseLease(storeKey, "other-instance");
+        }
+    }
+
+    @Test
+    public void circuitPerKeyTest() {
+        final var mappedConfig = Config.getInstance().getJsonMapConfigNoCache(TokenTransformerConfig.CONFIG_NAME);
+        mappedConfig.put(TokenTransformerConfig.CIRCUIT_BREAKER, true);
+        mappedConfig.put(TokenTransformerConfig.CIRCUIT_BREAKER_THRESHOLD, 1);
+
+        try {
+            TokenTransformerAction.reload(new TokenTransformerConfig(mappedConfig));
+            final var schema = new TokenTransformerAction().getTokenSchema("cacheKeyTest");
+            final var failing = schema.forCacheKey("failing");
+            final var healthy = schema.forCacheKey("healthy");
+
+            /* a key whose token requests fail opens its own circuit only. */
+            TokenTransformerAction.getCircuitBreaker("cacheKeyTest", failing).recordFailure();
+            Assertions.assertFalse(TokenTransformerAction.getCircuitBreaker("cacheKeyTest", failing).allowRequest());
+            Assertions.assertTrue(TokenTransformerAction.getCircuitBreaker("cacheKeyTest", healthy).allowRequest());
+            Assertions.assertTrue(TokenTransformerAction.getCircuitBreaker("cacheKeyTest", schema).allowRequest());
+            Assertions.assertEquals(TokenCircuitBreaker.State.OPEN, TokenTransformerAction.getCircuitBreakerStats().get("cacheKeyTest[failing]").getState());
+
+        } finally {
+            TokenTransformerAction.reload(TokenTransformerConfig.load());
+        }
+    }
+
+    @Test
+    public void reloadTest() {
+        final var action = new TokenTransformerAction();
+        final var unchanged = action.getTokenSchema("multiThreadTest");
+        final var changed = action.getTokenSchema("lifeware");
+
+        final var mappedConfig = Config.getInstance().getJsonMapConfigNoCache(TokenTransformerConfig.CONFIG_NAME);
+        final var tokenSchemas = (Map<String, Object>) mappedConfig.get(TokenTransformerConfig.TOKEN_SCHEMA);
+        ((Map<String, Object>) ((Map<String, Object>) tokenSchemas.get("lifeware")).get("request")).put("url", "https://reloaded.lifeware.lu/api/v0/token");
+        tokenSchemas.remove("mrasSSL");
+
+        try {
+            TokenTransformerAction.reload(new TokenTransformerConfig(mappedConfig));
+
+            /* unchanged schemas keep their instance and token, changed ones are rebuilt, removed ones are gone. */
+            Assertions.assertSame(unchanged, action.getTokenSchema("multiThreadTest"));
+            Assertions.assertEquals("abc-123", action.getTokenSchema("multiThreadTest").getSharedVariables().getAccessToken());
+            Assertions.assertNotSame(changed, action.getTokenSchema("lifeware"));
+            Assertions.assertEquals("https://reloaded.lifeware.lu/api/v0/token", action.getTokenSchema("lifeware").getTokenRequest().getUrl());
+            Assertions.assertNull(action.getTokenSchema("mrasSSL"));
+
+            /* the changed schema gets its own token store key, so it never adopts the token of its previous definition. */
+            Assertions.assertEquals(unchanged.getFingerprint(), TokenTransformerConfig.fingerprint(new TreeMap<>((Map<String, Object>) tokenSchemas.get("multiThreadTest"))));
+            Assertions.assertNotEquals(TokenTransformerAction.storeKey("lifeware", changed), TokenTransformerAction.storeKey("lifeware", action.getTokenSchema("lifeware")));
+
+            /* refreshes still running against the previous definition no longer schedule, persist or share its token. */
+            Assertions.assertFalse(TokenTransformerAction.isCurrent("lifeware", changed));
+            Assertions.assertTrue(TokenTransformerAction.isCurrent("multiThreadTest", unchanged));
+
+        } finally {
+            TokenTransformerAction.reload(TokenTransformerConfig.load());
+        }
+
+        Assertions.assertSame(unchanged, action.getTokenSchema("multiThreadTest"));
+        Assertions.assertEquals("https://networknttest.asp.lifeware.lu/api/v0/token", action.getTokenSchema("lifeware").getTokenRequest().getUrl());
+        Assertions.assertNotNull(action.getTokenSchema("mrasSSL"));
+    }
+
+    @Test
+    public void prefetchTest() throws Exception {
+        final var tokenCalls = new AtomicInteger();
+        final var server = startTokenServer(tokenCalls, 300);
+
+        try {
+            final var action = new TokenTransformerAction();
+            final var tokenSchemas = new LinkedHashMap<String, TokenSchema>();
+            for (final var tokenSchema : List.of("prefetchTest", "prefetchInvalidTest", "cacheKeyTest"))
+                tokenSchemas.put(tokenSchema, action.getTokenSchema(tokenSchema));
+
+            /* prefetch is not enabled in the test config, so the gateway is ready right away. */
+            Assertions.assertTrue(TokenTransformerAction.isReady());
+
+            /* the token service is slower than the deadline. */
+            final var timedOut = action.prefetch(tokenSchemas, 100).get(5, TimeUnit.SECONDS);
+            Assertions.assertTrue(timedOut.isComplete());
+            Assertions.assertEquals(TokenPrefetchStatus.Result.TIMED_OUT, timedOut.getResults().get("prefetchTest"));
+            Assertions.assertEquals(TokenPrefetchStatus.Result.FAILED, timedOut.getResults().get("prefetchInvalidTest"));
+            Assertions.assertEquals("update section is missing.", timedOut.getErrors().get("prefetchInvalidTest"));
+            Assertions.assertEquals(TokenPrefetchStatus.Result.SKIPPED, timedOut.getResults().get("cacheKeyTest"));
+
+            /* the token requested by the timed out prefetch lands in the background, and is not requested again. */
+            final var status = action.prefetch(Map.of("prefetchTest", action.getTokenSchema("prefetchTest")), 5000).get(10, TimeUnit.SECONDS);
+            Assertions.assertEquals(TokenPrefetchStatus.Result.READY, status.getResults().get("prefetchTest"));
+            Assertions.assertEquals("token-1", action.getTokenSchema("prefetchTest").getSharedVariables().getAccessToken());
+            Assertions.assertEquals(1, tokenCalls.get());
+
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    /**
+     * Starts a stub token service on port 17081 that returns 'token-{callNumber}' as the access_token.
+     */
+    private static HttpServer startTokenServer(final AtomicInteger tokenCalls, final long delayMillis) throws IOException {
+        final var server = HttpServer.create(new InetSocketAddress("localhost", 17081), 0);
+        server.createContext("/services/oauth2/token", exchange -> {
+            final var call = tokenCalls.incrementAndGet();
+
+            /* hold the response so concurrent callers pile up behind the refresh. */
+            try {
+                Thread.sleep(delayMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            final var body = ("{\"access_token\": \"token-" + call + "\"}").getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+        return server;
+    }
+
+    private String tenantAuthorization(final TokenTransformerAction action, final String tenant) {
+        final var objMap = new HashMap<String, Object>();
+        objMap.put("requestHeaders", Map.of("x-tenant-id", tenant));
+
+        final var resultMap = new HashMap<String, Object>();
+        action.performAction("ruleId", "actionId", objMap, resultMap, this.tokenSchemaActionValues("cacheKeyTest"));
+        return (String) ((Map<String, Object>) ((Map<String, Object>) resultMap.get("requestHeaders")).get("update")).get("Authorization");
+    }
+
+    private List<RuleActionValue> tokenSchemaActionValues(final String tokenSchema) {
+        final var tokenSchemaActionValue = new RuleActionValue();
+        tokenSchemaActionValue.setActionValueId("tokenSchemas");
+        tokenSchemaActionValue.setValue(tokenSchema);
+        return List.of(tokenSchemaActionValue);
+    }
+
+    private void expireSchema(final TokenTransformerAction action, final String tokenSchema) {
+        action.getTokenSchema(tokenSchema).getSharedVariables().setExpiration(0);
+    }
+
+    private void assertConcurrentCallers(final TokenTransformerAction action, final List<RuleActionValue> actionValues, final int callers, final String expectedHeader) throws InterruptedException {
+        final var gate = new CyclicBarrier(callers);
+        final var resultMaps = new ArrayList<Map<String, Object>>();
+        final var threads = new ArrayList<Thread>();
+
+        for (int x = 0; x < callers; x++) {
+            final var resultMap = new HashMap<String, Object>();
+            resultMaps.add(resultMap);
+            threads.add(new Thread(() -> {
+                try {
+                    gate.await();
+                } catch (InterruptedException | BrokenBarrierException e) {
+                    throw new RuntimeException(e);
+                }
+                action.performAction("ruleId", "actionId", new HashMap<>(), resultMap, actionValues);
+            }));
+        }
+
+        for (final var thread : threads)
+            thread.start();
+
+        for (final var thread : threads)
+            thread.join();
+
+        for (final var resultMap : resultMaps) {
+            final var requestHeaderMap = (Map<String, Object>) resultMap.get("requestHeaders");
+            Assertions.assertNotNull(requestHeaderMap);
+
+            final var updateMap = (Map<String, Object>) requestHeaderMap.get("update");
+            Assertions.assertNotNull(updateMap);
+            Assertions.assertEquals(expectedHeader, updateMap.get("Authorization"));
+        }
+    }
 }
@@ -0,0 +1,32 @@
+package com.networknt.rule.generic.token.metrics;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void percentileTest() {
+        final var histogram = new LatencyHistogram();
+
+        for (int x = 0; x < 90; x++)
+            histogram.record(TimeUnit.MICROSECONDS.toNanos(800));
+
+        for (int x = 0; x < 10; x++)
+            histogram.record(TimeUnit.MILLISECONDS.toNanos(40));
+
+        histogram.record(TimeUnit.SECONDS.toNanos(30));
+
+        final var snapshot = histogram.getSnapshot();
+        Assertions.assertEquals(101, snapshot.getCount());
+        Assertions.assertEquals(30_000_000, snapshot.getMax());
+
+        /* percentiles are reported as the upper bound of their bucket. */
+        Assertions.assertEquals(1_000, snapshot.getPercentile(50));
+        Assertions.assertEquals(50_000, snapshot.getPercentile(95));
+        Assertions.assertEquals(30_000_000, snapshot.getPercentile(100));
+        Assertions.assertEquals(1, snapshot.getBucketCounts()[LatencyHistogram.Snapshot.getBucketBounds().length]);
+    }
+}
@@ -0,0 +1,82 @@
+package com.networknt.rule.generic.token.schema;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class SharedVariableSchemaStressTest {
+
+    private static final int READERS = 4;
+    private static final int REFRESHES = 200_000;
+
+    /**
+     * One thread keeps refreshing the token through a staged copy, like the refresh path does,
+     * while readers check that every token they see belongs to the expiration it was published with.
+     */
+    @Test
+    public void tokenStateIsPublishedAtomicallyTest() throws Exception {
+        final var sharedVariables = new SharedVariableSchema();
+        sharedVariables.setAccessToken("token-0");
+        sharedVariables.setExpiration(0L);
+
+        final var done = new AtomicBoolean(false);
+        final var start = new CountDownLatch(1);
+        final ExecutorService executor = Executors.newFixedThreadPool(READERS + 1);
+
+        try {
+            final var readers = new ArrayList<Future<Long>>();
+            for (int i = 0; i < READERS; i++) {
+                readers.add(executor.submit(() -> {
+                    start.await();
+                    long reads = 0;
+                    long lastExpiration = 0;
+
+                    while (!done.get()) {
+                        final var snapshot = sharedVariables.getTokenState();
+                        Assertions.assertEquals("token-" + snapshot.getExpiration(), snapshot.getAccessToken());
+                        Assertions.assertTrue(snapshot.getExpiration() >= lastExpiration, "token state went backwards");
+                        lastExpiration = snapshot.getExpiration();
+
+                        /* separate getters may see a newer token, never an older one than the expiration already read. */
+                        final var expiration = sharedVariables.getExpiration();
+                        final var tokenNumber = Long.parseLong(sharedVariables.getAccessToken().substring("token-".length()));
+                        Assertions.assertTrue(tokenNumber >= expiration, "read an old token with a new expiration");
+                        reads++;
+                    }
+                    return reads;
+                }));
+            }
+
+            final var writer = executor.submit(() -> {
+                start.await();
+                for (long i = 1; i <= REFRESHES; i++) {
+                    final var staged = sharedVariables.copy();
+                    staged.setAccessToken("token-" + i);
+                    staged.setExpiration(i);
+                    sharedVariables.publish(staged);
+                }
+                done.set(true);
+                return null;
+            });
+
+            start.countDown();
+            writer.get(60, TimeUnit.SECONDS);
+
+            for (final var reader : readers)
+                Assertions.assertTrue(reader.get(10, TimeUnit.SECONDS) > 0);
+
+            Assertions.assertEquals("token-" + REFRESHES, sharedVariables.getAccessToken());
+            Assertions.assertEquals(REFRESHES, sharedVariables.getExpiration());
+
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.networknt.rule.generic.token.schema;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+public class SharedVariableTemplateTest {
+
+    @Test
+    public void resolveMixedTemplateTest() {
+        final var sharedVariables = new SharedVariableSchema();
+        sharedVariables.setClientId("my-id");
+        sharedVariables.setClientSecret("my-secret".toCharArray());
+        sharedVariables.setExpiration(12345L);
+
+        final var template = SharedVariableTemplate.compile("id=!ref(sharedVariables.clientId)&secret=!ref(sharedVariables.CLIENTSECRET)&exp=!ref(sharedVariables.expiration)$");
+        Assertions.assertEquals("id=my-id&secret=my-secret&exp=12345$", template.resolve(sharedVariables));
+
+        /* templates are compiled once and follow changes to the shared variables. */
+        sharedVariables.setClientId("my-other-id");
+        Assertions.assertEquals("id=my-other-id&secret=my-secret&exp=12345$", template.resolve(sharedVariables));
+
+        Assertions.assertEquals("no refs here", SharedVariableTemplate.compile("no refs here").resolve(sharedVariables));
+        Assertions.assertEquals("", SharedVariableTemplate.compile("").resolve(sharedVariables));
+    }
+
+    @Test
+    public void unknownVariableTest() {
+        final var template = SharedVariableTemplate.compile("Bearer !ref(sharedVariables.notAField)");
+        final var exception = Assertions.assertThrows(IllegalArgumentException.class, () -> template.resolve(new SharedVariableSchema()));
+        Assertions.assertEquals("Unknown variable found: notAField", exception.getMessage());
+    }
+
+    @Test
+    public void resolvedHeadersFollowGenerationTest() {
+        final var sharedVariables = new SharedVariableSchema();
+        sharedVariables.setAccessToken("token-1");
+
+        final var updateSchema = new UpdateSchema();
+        updateSchema.setHeaders(Map.of("Authorization", "Bearer !ref(sharedVariables.accessToken)"));
+
+        /* unchanged variables hand out the same resolved map. */
+        final var resolved = updateSchema.getResolvedHeaders(sharedVariables);
+        Assertions.assertSame(resolved, updateSchema.getResolvedHeaders(sharedVariables));
+        Assertions.assertThrows(UnsupportedOperationException.class, () -> resolved.put("X-Other", "value"));
+
+        /* any write, directly or through a published copy, resolves again. */
+        sharedVariables.setAccessToken("token-2");
+        Assertions.assertEquals("Bearer token-2", updateSchema.getResolvedHeaders(sharedVariables).get("Authorization"));
+
+        final var staged = sharedVariables.copy();
+        staged.setAccessToken("token-3");
+        Assertions.assertEquals("Bearer token-2", updateSchema.getResolvedHeaders(sharedVariables).get("Authorization"));
+        sharedVariables.publish(staged);
+        Assertions.assertEquals("Bearer token-3", updateSchema.getResolvedHeaders(sharedVariables).get("Authorization"));
+
+        /* resolved per shared variables instance. */
+        Assertions.assertEquals("Bearer token-3", updateSchema.getResolvedHeaders(staged).get("Authorization"));
+        final var other = new SharedVariableSchema();
+        other.setAccessToken("other");
+        Assertions.assertEquals("Bearer other", updateSchema.getResolvedHeaders(other).get("Authorization"));
+
+        /* copies sharing the update schema keep their own result, so alternating between them still reuses it. */
+        final var stagedHeaders = updateSchema.getResolvedHeaders(staged);
+        final var otherHeaders = updateSchema.getResolvedHeaders(other);
+        Assertions.assertSame(stagedHeaders, updateSchema.getResolvedHeaders(staged));
+        Assertions.assertSame(otherHeaders, updateSchema.getResolvedHeaders(other));
+    }
+}
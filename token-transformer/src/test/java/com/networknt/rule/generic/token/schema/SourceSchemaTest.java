@@ -0,0 +1,128 @@
+package com.networknt.rule.generic.token.schema;
+
+import com.networknt.config.JsonMapper;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import javax.net.ssl.SSLSession;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+public class SourceSchemaTest {
+
+    @Test
+    public void bodyWithNestedObjectsTest() throws Exception {
+        final var source = JsonMapper.objectMapper.readValue("{"
+                + "\"expirationSchema\": {\"location\": \"body\", \"field\": \"expires_in\", \"ttlUnit\": \"Second\"},"
+                + "\"body\": ["
+                + "  {\"source\": \"access_token\", \"destination\": \"!ref(sharedVariables.accessToken)\"},"
+                + "  {\"source\": \"scope\", \"destination\": \"!ref(sharedVariables.scope)\"}"
+                + "]}", SourceSchema.class);
+
+        /* nested fields with the same names as the sources must not be picked up. */
+        final var responseBody = "{"
+                + "\"id_token\": {\"access_token\": \"nested\", \"claims\": [{\"scope\": \"nested\"}, 1, null]},"
+                + "\"access_token\": \"abc123\","
+                + "\"profile\": [\"a\", {\"expires_in\": 1}],"
+                + "\"token_type\": \"Bearer\","
+                + "\"expires_in\": 3600,"
+                + "\"scope\": \"read write\""
+                + "}";
+
+        final var sharedVariables = new SharedVariableSchema();
+        source.writeResponseToSharedVariables(sharedVariables, new StubResponse(responseBody));
+
+        Assertions.assertEquals("abc123", sharedVariables.getAccessToken());
+        Assertions.assertEquals("read write", sharedVariables.getScope());
+        Assertions.assertEquals(3600000L, sharedVariables.getExpiration());
+    }
+
+    @Test
+    public void bodyNotParsedWhenNothingIsReadTest() throws Exception {
+        final var source = JsonMapper.objectMapper.readValue("{}", SourceSchema.class);
+        final var sharedVariables = new SharedVariableSchema();
+
+        /* no body sources and no body expiration, so a non-json body is never looked at. */
+        source.writeResponseToSharedVariables(sharedVariables, new StubResponse("not json"));
+        Assertions.assertNull(sharedVariables.getAccessToken());
+    }
+
+    @Test
+    public void jwtExpirationTest() throws Exception {
+        final var source = JsonMapper.objectMapper.readValue("{"
+                + "\"expirationSchema\": {\"location\": \"jwt\"},"
+                + "\"body\": [{\"source\": \"access_token\", \"destination\": \"!ref(sharedVariables.accessToken)\"}]"
+                + "}", SourceSchema.class);
+
+        final var encoder = Base64.getUrlEncoder().withoutPadding();
+        final var accessToken = encoder.encodeToString("{\"alg\":\"RS256\"}".getBytes(StandardCharsets.UTF_8))
+                + "." + encoder.encodeToString("{\"sub\":\"abc\",\"ctx\":{\"exp\":1},\"exp\":1900000000}".getBytes(StandardCharsets.UTF_8))
+                + ".c2lnbmF0dXJl";
+
+        final var sharedVariables = new SharedVariableSchema();
+        source.writeResponseToSharedVariables(sharedVariables, new StubResponse("{\"access_token\": \"" + accessToken + "\", \"expires_in\": 60}"));
+
+        Assertions.assertEquals(accessToken, sharedVariables.getAccessToken());
+        Assertions.assertEquals(1900000000000L, sharedVariables.getExpiration());
+
+        /* opaque tokens have no exp claim to read. */
+        Assertions.assertNull(SourceSchema.readJwtExpiration("opaque-token"));
+        Assertions.assertNull(SourceSchema.readJwtExpiration("a.!!!.c"));
+    }
+
+    private static class StubResponse implements HttpResponse<String> {
+        private final String body;
+
+        private StubResponse(final String body) {
+            this.body = body;
+        }
+
+        @Override
+        public int statusCode() {
+            return 200;
+        }
+
+        @Override
+        public HttpRequest request() {
+            return null;
+        }
+
+        @Override
+        public Optional<HttpResponse<String>> previousResponse() {
+            return Optional.empty();
+        }
+
+        @Override
+        public HttpHeaders headers() {
+            return HttpHeaders.of(Map.of("Content-Type", List.of("application/json")), (name, value) -> true);
+        }
+
+        @Override
+        public String body() {
+            return this.body;
+        }
+
+        @Override
+        public Optional<SSLSession> sslSession() {
+            return Optional.empty();
+        }
+
+        @Override
+        public URI uri() {
+            return URI.create("http://localhost/token");
+        }
+
+        @Override
+        public HttpClient.Version version() {
+            return HttpClient.Version.HTTP_1_1;
+        }
+    }
+}
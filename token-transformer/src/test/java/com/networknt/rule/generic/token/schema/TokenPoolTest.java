@@ -0,0 +1,35 @@
+package com.networknt.rule.generic.token.schema;
+
+import com.networknt.config.JsonMapper;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+public class TokenPoolTest {
+
+    @Test
+    public void leastRecentlyUsedTest() {
+        final var schema = JsonMapper.objectMapper.convertValue(Map.of(
+                "sharedVariables", Map.of("clientId", "client", "accessToken", "configured"),
+                "pool", Map.of("size", 3, "strategy", "LRU")
+        ), TokenSchema.class);
+        final var tokenPool = schema.getTokenPool();
+
+        Assertions.assertSame(tokenPool, schema.getTokenPool());
+        Assertions.assertEquals(3, tokenPool.size());
+        Assertions.assertEquals("client", tokenPool.getMember(1).getSharedVariables().getClientId());
+        Assertions.assertNull(tokenPool.getMember(1).getSharedVariables().getAccessToken());
+        Assertions.assertNull(tokenPool.getMember(1).getTokenPool());
+
+        /* every member is used once before any is used twice. */
+        Assertions.assertSame(tokenPool.getMember(0), tokenPool.next());
+        Assertions.assertSame(tokenPool.getMember(1), tokenPool.next());
+        Assertions.assertSame(tokenPool.getMember(2), tokenPool.next());
+        Assertions.assertSame(tokenPool.getMember(0), tokenPool.next());
+
+        /* unusable members are skipped, and the least recently used usable one is picked. */
+        Assertions.assertSame(tokenPool.getMember(2), tokenPool.next(member -> member != tokenPool.getMember(1)));
+        Assertions.assertNull(tokenPool.next(member -> false));
+    }
+}
@@ -0,0 +1,70 @@
+package com.networknt.rule.generic.token.schema.jwt;
+
+import com.networknt.config.Config;
+import com.networknt.config.JsonMapper;
+import com.networknt.rule.generic.token.schema.TtlUnit;
+import org.apache.commons.codec.binary.Base64;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPairGenerator;
+import java.security.Signature;
+import java.security.spec.ECGenParameterSpec;
+import java.util.Map;
+
+public class JwtAlgorithmTest {
+
+    @Test
+    public void findTest() {
+        Assertions.assertEquals(JwtAlgorithm.ES256, JwtAlgorithm.find("ES256"));
+        Assertions.assertEquals(JwtAlgorithm.ES384, JwtAlgorithm.find("SHA384withECDSA"));
+        Assertions.assertEquals(JwtAlgorithm.RS256, JwtAlgorithm.find("SHA256withRSA"));
+        Assertions.assertEquals(JwtAlgorithm.ED25519, JwtAlgorithm.find("EdDSA"));
+        Assertions.assertEquals(JwtAlgorithm.ED25519, JwtAlgorithm.find("ed25519"));
+        Assertions.assertNull(JwtAlgorithm.find("SHA1withDSA"));
+    }
+
+    @Test
+    public void ecdsaDerToJoseTest() throws Exception {
+        for (final var algorithm : new JwtAlgorithm[]{JwtAlgorithm.ES256, JwtAlgorithm.ES384, JwtAlgorithm.ES512}) {
+            final var curve = algorithm == JwtAlgorithm.ES256 ? "secp256r1" : algorithm == JwtAlgorithm.ES384 ? "secp384r1" : "secp521r1";
+            final var generator = KeyPairGenerator.getInstance("EC");
+            generator.initialize(new ECGenParameterSpec(curve));
+            final var keyPair = generator.generateKeyPair();
+            final var payload = "header.body".getBytes(StandardCharsets.UTF_8);
+
+            /* enough signatures to hit r and s values with leading zeros. */
+            for (int x = 0; x < 50; x++) {
+                final var signer = Signature.getInstance(algorithm.getJcaName());
+                signer.initSign(keyPair.getPrivate());
+                signer.update(payload);
+                final var jose = algorithm.toJose(signer.sign());
+
+                final var verifier = Signature.getInstance(algorithm.getJcaName() + "inP1363Format");
+                verifier.initVerify(keyPair.getPublic());
+                verifier.update(payload);
+                Assertions.assertTrue(verifier.verify(jose), algorithm + " signature did not verify");
+            }
+        }
+    }
+
+    @Test
+    public void signedHeaderAlgTest() {
+        final var schema = Config.getInstance().getMapper().convertValue(Map.of(
+                "algorithm", "Ed25519",
+                "jwtHeader", Map.of("staticFields", Map.of("typ", "JWT"))
+        ), JWTSchema.class);
+
+        Assertions.assertEquals("Ed25519", schema.getSignatureAlgorithm());
+        final var header = JsonMapper.string2Map(new String(Base64.decodeBase64(schema.getSignedJwtHeader().encode(0, TtlUnit.SECOND)), StandardCharsets.UTF_8));
+        Assertions.assertEquals(Map.of("alg", "EdDSA", "typ", "JWT"), header);
+
+        /* a configured alg is kept. */
+        final var configured = Config.getInstance().getMapper().convertValue(Map.of(
+                "algorithm", "SHA256withRSA",
+                "jwtHeader", Map.of("staticFields", Map.of("alg", "RS256"))
+        ), JWTSchema.class);
+        Assertions.assertSame(configured.getJwtHeader(), configured.getSignedJwtHeader());
+    }
+}
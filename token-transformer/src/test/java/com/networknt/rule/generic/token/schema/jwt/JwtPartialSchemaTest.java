@@ -0,0 +1,49 @@
+package com.networknt.rule.generic.token.schema.jwt;
+
+import com.networknt.config.Config;
+import com.networknt.config.JsonMapper;
+import com.networknt.rule.generic.token.schema.TtlUnit;
+import org.apache.commons.codec.binary.Base64;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+public class JwtPartialSchemaTest {
+
+    @Test
+    public void encodeMatchesJwtMapTest() {
+        final var schema = Config.getInstance().getMapper().convertValue(Map.of(
+                "staticFields", Map.of("iss", "my-issuer", "aud", "https://test.salesforce.com", "sub", "ünïcode", "exp", "overridden"),
+                "expiryFields", List.of("exp"),
+                "currentTimeFields", List.of("iat"),
+                "uuidFields", List.of("jti")
+        ), JwtPartialSchema.class);
+
+        final var expected = schema.buildJwtMap(300, TtlUnit.SECOND);
+        final var first = schema.encode(300, TtlUnit.SECOND);
+        final var decoded = JsonMapper.string2Map(new String(Base64.decodeBase64(first), StandardCharsets.UTF_8));
+
+        Assertions.assertEquals(expected.keySet(), decoded.keySet());
+        Assertions.assertEquals("my-issuer", decoded.get("iss"));
+        Assertions.assertEquals("ünïcode", decoded.get("sub"));
+        Assertions.assertEquals(Long.parseLong(expected.get("exp")), Long.parseLong((String) decoded.get("exp")), 2);
+        Assertions.assertEquals(Long.parseLong(expected.get("iat")), Long.parseLong((String) decoded.get("iat")), 2);
+
+        /* the static part is encoded once and shared, the uuid changes on every call. */
+        final var second = JsonMapper.string2Map(new String(Base64.decodeBase64(schema.encode(300, TtlUnit.SECOND)), StandardCharsets.UTF_8));
+        Assertions.assertNotEquals(decoded.get("jti"), second.get("jti"));
+    }
+
+    @Test
+    public void encodeStaticOnlyTest() {
+        final var schema = Config.getInstance().getMapper().convertValue(Map.of(
+                "staticFields", Map.of("alg", "RS256")
+        ), JwtPartialSchema.class);
+
+        Assertions.assertEquals("{\"alg\":\"RS256\"}", new String(Base64.decodeBase64(schema.encode(300, TtlUnit.SECOND)), StandardCharsets.UTF_8));
+        Assertions.assertSame(schema.encode(300, TtlUnit.SECOND), schema.encode(300, TtlUnit.SECOND));
+    }
+}